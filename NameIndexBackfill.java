@@ -0,0 +1,46 @@
+import repository.MySQLHospitalRepository;
+import repository.SchemaBootstrap;
+import service.KeyService;
+import util.DBConnection;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// One-off job that fills Patient_Name_Tokens for records stored before the name index existed.
+// Creates keys/index/hmac.key on first run (keep it with the RSA keys: without it the tokens are useless,
+// and replacing it means running this job again). Safe to re-run; each record's tokens are rewritten.
+// Run from the project root:  java -cp "bin:lib/*" NameIndexBackfill [user] [password] [page size]
+public class NameIndexBackfill {
+
+    public static void main(String[] args) throws Exception {
+        String user;
+        String pass;
+        if (args.length >= 2) {
+            user = args[0];
+            pass = args[1];
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            System.out.print("DB admin username: ");
+            user = reader.readLine();
+            System.out.print("DB admin password: ");
+            pass = reader.readLine();
+        }
+        int pageSize = args.length >= 3 ? Integer.parseInt(args[2]) : 1000;
+
+        if (!Files.exists(Path.of(KeyService.INDEX_KEY))) {
+            new KeyService().createIndexKey(KeyService.INDEX_KEY);
+            System.out.println("🔑 Created search index key at " + KeyService.INDEX_KEY);
+        }
+
+        DBConnection.setCredentials(user, pass);
+        SchemaBootstrap.ensureSchema();
+
+        long start = System.currentTimeMillis();
+        int indexed = new MySQLHospitalRepository().rebuildNameIndex(pageSize);
+        System.out.println("✅ Indexed " + indexed + " records in " + (System.currentTimeMillis() - start) + " ms.");
+
+        DBConnection.getDataSource().close();
+    }
+}
@@ -0,0 +1,91 @@
+import repository.MySQLHospitalRepository;
+import repository.SchemaBootstrap;
+import repository.SearchCriteria;
+import service.KeyService;
+import util.DBConnection;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Creates the search indexes on Hospital_Records, then EXPLAINs every structured search shape and
+// fails (exit code 1) if any of them would still scan the whole table or filesort.
+// Run from the project root with a database account that may ALTER Hospital_Records:
+//   java -cp "bin:lib/*" SchemaSetup [user] [password]
+// Pass --check to skip index creation and only verify the query plans. On a near-empty table the optimizer
+// may still prefer a scan, so run the check against a representative data set.
+public class SchemaSetup {
+
+    public static void main(String[] args) throws Exception {
+        boolean checkOnly = args.length > 0 && args[0].equals("--check");
+        int argStart = checkOnly ? 1 : 0;
+
+        String user;
+        String pass;
+        if (args.length >= argStart + 2) {
+            user = args[argStart];
+            pass = args[argStart + 1];
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            System.out.print("DB admin username: ");
+            user = reader.readLine();
+            System.out.print("DB admin password: ");
+            pass = reader.readLine();
+        }
+        DBConnection.setCredentials(user, pass);
+
+        if (!checkOnly) {
+            List<String> created = SchemaBootstrap.ensureSchema();
+            System.out.println(created.isEmpty() ? "✅ All search indexes already present." : "✅ Created " + created.size() + " index(es).");
+        }
+
+        Map<String, SearchCriteria> shapes = new LinkedHashMap<>();
+        shapes.put("id", new SearchCriteria().patientId("P-000001"));
+        shapes.put("name prefix", new SearchCriteria().namePrefix("Smi"));
+        if (Files.exists(Path.of(KeyService.INDEX_KEY))) {
+            shapes.put("name contains", new SearchCriteria().nameContains("mit"));
+        } else {
+            System.out.println("⚠️ No index key at " + KeyService.INDEX_KEY + "; skipping the substring name check (see NameIndexBackfill).");
+        }
+        shapes.put("dob exact", new SearchCriteria().dob(LocalDate.of(1980, 1, 1)));
+        shapes.put("dob month", new SearchCriteria().dobMonth(YearMonth.of(1980, 1)));
+        shapes.put("dob year", new SearchCriteria().dobYear(1980));
+        shapes.put("doctor", new SearchCriteria().doctorName("Dr. Brown"));
+        shapes.put("nurse", new SearchCriteria().nurseName("Nurse Lee"));
+        shapes.put("check-in range", new SearchCriteria().checkInBetween(
+                LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 31, 23, 59)));
+
+        MySQLHospitalRepository repository = new MySQLHospitalRepository();
+        int failures = 0;
+        for (Map.Entry<String, SearchCriteria> shape : shapes.entrySet()) {
+            for (Map<String, String> row : repository.explainSearch(shape.getValue())) {
+                if (row.get("table") != null && row.get("table").startsWith("<")) continue; // materialized subquery
+                String key = row.get("key");
+                String access = row.get("type");
+                String extra = row.get("Extra") == null ? "" : row.get("Extra");
+                // Range filters (DOB year/month, check-in) walk the index in date order and token candidates come back
+                // in record order, so sorting those pages by name is expected
+                boolean sortAllowed = shape.getKey().equals("dob month") || shape.getKey().equals("dob year")
+                        || shape.getKey().equals("check-in range") || shape.getKey().equals("name contains");
+                boolean ok = key != null && !"ALL".equals(access) && (sortAllowed || !extra.contains("filesort"));
+                if (!ok) failures++;
+                System.out.printf("%s %-16s key=%-24s type=%-6s rows=%-8s %s%n",
+                        ok ? "✅" : "❌", shape.getKey(), key, access, row.get("rows"), extra);
+            }
+        }
+
+        DBConnection.getDataSource().close();
+        if (failures > 0) {
+            System.out.println("❌ " + failures + " search shape(s) are not served by an index.");
+            System.exit(1);
+        }
+        System.out.println("✅ Every search shape uses an index.");
+    }
+}
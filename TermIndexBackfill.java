@@ -0,0 +1,59 @@
+import model.DecryptedRecord;
+import repository.MySQLHospitalRepository;
+import repository.SchemaBootstrap;
+import service.KeyRing;
+import service.KeyService;
+import service.PatientService;
+import service.TermIndex;
+import util.DBConnection;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// One-off job that fills Patient_Term_Tokens for records stored before the term index existed.
+// Creates the per-role term keys under keys/index/ on first run. Existing records are decrypted with the
+// doctor's private key (which must be present) and re-indexed for every role. Safe to re-run.
+// Run from the project root:  java -cp "bin:lib/*" TermIndexBackfill [user] [password] [page size]
+public class TermIndexBackfill {
+
+    public static void main(String[] args) throws Exception {
+        String user;
+        String pass;
+        if (args.length >= 2) {
+            user = args[0];
+            pass = args[1];
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            System.out.print("DB admin username: ");
+            user = reader.readLine();
+            System.out.print("DB admin password: ");
+            pass = reader.readLine();
+        }
+        int pageSize = args.length >= 3 ? Integer.parseInt(args[2]) : 500;
+
+        KeyService keyService = new KeyService();
+        for (String role : new String[]{KeyRing.DOCTOR, KeyRing.NURSE}) {
+            String keyPath = KeyService.termIndexKey(role);
+            if (!Files.exists(Path.of(keyPath))) {
+                keyService.createIndexKey(keyPath);
+                System.out.println("🔑 Created " + role + " term index key at " + keyPath);
+            }
+        }
+
+        DBConnection.setCredentials(user, pass);
+        SchemaBootstrap.ensureSchema();
+
+        PatientService patientService = new PatientService();
+        TermIndex termIndex = patientService.getTermIndex();
+        long start = System.currentTimeMillis();
+        int indexed = new MySQLHospitalRepository().rebuildTermIndex(record -> {
+            DecryptedRecord decrypted = patientService.decryptRecord(record, KeyRing.DOCTOR, false);
+            return termIndex.tokensFor(decrypted.getSymptoms(), decrypted.getDiagnosis());
+        }, pageSize);
+        System.out.println("✅ Indexed " + indexed + " records in " + (System.currentTimeMillis() - start) + " ms.");
+
+        DBConnection.getDataSource().close();
+    }
+}
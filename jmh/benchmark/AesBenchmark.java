@@ -0,0 +1,76 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import service.Decryptor;
+import service.Encryptor;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// AES-GCM, single-shot and chunked streaming, plus a Range-style read of the last 64 KB of a stream
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AesBenchmark {
+
+    @Param({"1024", "1048576", "67108864"})
+    int size;
+
+    private Encryptor encryptor;
+    private Decryptor decryptor;
+    private SecretKey aesKey;
+    private byte[] plain;
+    private byte[] sealed;
+    private byte[] streamSealed;
+
+    @Setup
+    public void setup() throws Exception {
+        // The data key never touches RSA here, so no key files are needed
+        encryptor = new Encryptor(null);
+        decryptor = new Decryptor(null);
+        aesKey = encryptor.generateAESKey();
+        plain = Fixtures.randomBytes(size);
+        sealed = encryptor.encryptBytesWithAES(plain, aesKey);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encryptor.encryptStream(new ByteArrayInputStream(plain), out, aesKey);
+        streamSealed = out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return encryptor.encryptBytesWithAES(plain, aesKey);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return decryptor.decryptBytes(sealed, aesKey);
+    }
+
+    @Benchmark
+    public void streamEncrypt() throws Exception {
+        encryptor.encryptStream(new ByteArrayInputStream(plain), OutputStream.nullOutputStream(), aesKey);
+    }
+
+    @Benchmark
+    public void streamDecrypt() throws Exception {
+        decryptor.decryptStream(new ByteArrayInputStream(streamSealed), OutputStream.nullOutputStream(), aesKey);
+    }
+
+    // As a video player's seek does: only the segments covering the range are decrypted
+    @Benchmark
+    public void streamRangeTail() throws Exception {
+        long tail = Math.max(0, size - 64 * 1024);
+        decryptor.decryptStreamRange(new ByteArrayInputStream(streamSealed), OutputStream.nullOutputStream(), aesKey,
+                tail, size - tail, size);
+    }
+}
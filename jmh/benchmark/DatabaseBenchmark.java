@@ -0,0 +1,133 @@
+package benchmark;
+
+import model.PatientRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import repository.BatchInsertResult;
+import repository.MySQLHospitalRepository;
+import service.KeyService;
+import service.PatientService;
+import service.TermIndex;
+import util.DBConnection;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// insert() in a loop vs. insertAll() against a real database. Needs -Dbench.db.user / -Dbench.db.pass
+// (gradle jmh -PbenchDbUser=... -PbenchDbPass=...); the marker rows it writes are deleted after every batch.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class DatabaseBenchmark {
+
+    private static final String DB_MARKER = "__benchmark_row__";
+
+    @Param({"1000"})
+    int rows;
+
+    private MySQLHospitalRepository repository;
+    private PatientRecord template;
+    private List<PatientRecord> records;
+
+    @Setup(Level.Trial)
+    public void connect() throws Exception {
+        String user = System.getProperty("bench.db.user");
+        if (user == null) {
+            throw new IllegalStateException("DatabaseBenchmark needs -Dbench.db.user and -Dbench.db.pass");
+        }
+        DBConnection.setCredentials(user, System.getProperty("bench.db.pass", ""));
+        repository = new MySQLHospitalRepository();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            template = new PatientRecord();
+            new PatientService().processEncryption(template, "Persistent cough, mild fever", "Acute bronchitis").close();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    // Fresh records for every batch: inserting assigns their record indexes
+    @Setup(Level.Invocation)
+    public void prepareRows() {
+        records = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            PatientRecord record = new PatientRecord();
+            record.setPatientId("BENCH-" + i);
+            record.setPatientName(DB_MARKER);
+            record.setPatientDob(java.sql.Date.valueOf("1980-01-01"));
+            record.setCheckInDate(new java.sql.Timestamp(System.currentTimeMillis()));
+            record.setDoctorName("Dr. Bench");
+            record.setNurseName("Nurse Bench");
+            record.setEncryptedSymptoms(template.getEncryptedSymptoms());
+            record.setEncryptedDiagnosis(template.getEncryptedDiagnosis());
+            record.setEncryptedImages(new byte[0]);
+            record.setEncryptedVideos(new byte[0]);
+            record.setDoctorEncryptedAesKey(template.getDoctorEncryptedAesKey());
+            record.setNurseEncryptedAesKey(template.getNurseEncryptedAesKey());
+            records.add(record);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteRows() throws Exception {
+        deleteMarkerRows();
+    }
+
+    @Benchmark
+    public int insertLoop() throws Exception {
+        for (PatientRecord record : records) {
+            repository.insert(record);
+        }
+        return records.size();
+    }
+
+    @Benchmark
+    public int insertAll() throws Exception {
+        BatchInsertResult result = repository.insertAll(records);
+        return result.getInsertedCount();
+    }
+
+    private static void deleteMarkerRows() throws Exception {
+        try (Connection conn = DBConnection.getConnection()) {
+            // Blind-index tokens were written alongside the rows when their keys are configured
+            if (Files.exists(Path.of(KeyService.INDEX_KEY))) {
+                deleteMarkerTokens(conn, "Patient_Name_Tokens");
+            }
+            if (new TermIndex(new KeyService()).isEnabled()) {
+                deleteMarkerTokens(conn, "Patient_Term_Tokens");
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM Hospital_Records WHERE patient_name = ?")) {
+                stmt.setString(1, DB_MARKER);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    private static void deleteMarkerTokens(Connection conn, String table) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE record_index IN "
+                + "(SELECT record_index FROM Hospital_Records WHERE patient_name = ?)")) {
+            stmt.setString(1, DB_MARKER);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import server.JsonWriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Search rows streamed through JsonWriter the way SearchHandler writes them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int rows;
+
+    private List<Map<String, Object>> results;
+
+    @Setup
+    public void setup() {
+        results = searchRows(rows, null);
+    }
+
+    @Benchmark
+    public long search() throws Exception {
+        return writeJson(results);
+    }
+
+    static long writeJson(List<Map<String, Object>> rows) throws Exception {
+        Fixtures.CountingOutputStream out = new Fixtures.CountingOutputStream();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginObject().name("results").value(rows).name("nextCursor").nullValue().endObject();
+        }
+        return out.count;
+    }
+
+    static List<Map<String, Object>> searchRows(int count, byte[] image) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("patientName", "Patient " + i);
+            map.put("patientDob", "1980-01-01");
+            map.put("checkInDate", "2024-05-01 08:30:00.0");
+            map.put("doctorName", "Dr. Brown");
+            map.put("nurseName", "Nurse Lee");
+            map.put("symptoms", "Persistent cough, mild fever");
+            map.put("diagnosis", "Acute bronchitis");
+            map.put("recordIndex", i);
+            if (image != null) map.put("image", image);
+            rows.add(map);
+        }
+        return rows;
+    }
+}
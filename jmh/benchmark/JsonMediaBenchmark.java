@@ -0,0 +1,33 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Ten search rows that each inline a 256 KB binary field as base64; a fixed shape, so it has no rows
+// parameter and runs once instead of once per JsonBenchmark.rows value
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonMediaBenchmark {
+
+    private List<Map<String, Object>> results;
+
+    @Setup
+    public void setup() {
+        results = JsonBenchmark.searchRows(10, Fixtures.randomBytes(256 * 1024));
+    }
+
+    @Benchmark
+    public long searchWithMedia() throws Exception {
+        return JsonBenchmark.writeJson(results);
+    }
+}
@@ -0,0 +1,94 @@
+package benchmark;
+
+import model.PatientRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import service.Decryptor;
+import service.DrbgIvSource;
+import service.Encryptor;
+import service.KeyRing;
+import service.KeyService;
+import service.PatientService;
+import util.Hashing;
+
+import javax.crypto.SecretKey;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+// RSA key wrapping, IV generation, hashing and end-to-end record encryption (needs keys/)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyBenchmark {
+
+    private Encryptor encryptor;
+    private Decryptor decryptor;
+    private SecretKey aesKey;
+    private byte[] wrapped;
+    private DrbgIvSource ivSource;
+    private PatientService patientService;
+    private PrintStream console;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyRing keyRing = new KeyRing(new KeyService());
+        encryptor = new Encryptor(keyRing.getPublicKey(KeyRing.DOCTOR));
+        decryptor = new Decryptor(keyRing.getPrivateKey(KeyRing.DOCTOR));
+        aesKey = encryptor.generateAESKey();
+        wrapped = encryptor.encryptAESKeyWithRSA(aesKey);
+        ivSource = new DrbgIvSource();
+        patientService = new PatientService();
+        // processEncryption reports progress on the console; keep it out of the results
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void restoreConsole() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public byte[] rsaWrap() throws Exception {
+        return encryptor.encryptAESKeyWithRSA(aesKey);
+    }
+
+    @Benchmark
+    public SecretKey rsaUnwrap() throws Exception {
+        return decryptor.decryptAESKey(wrapped);
+    }
+
+    // Current per-thread DRBG vs. the former getInstanceStrong() per IV
+    @Benchmark
+    public byte[] ivDrbg() {
+        return ivSource.nextIv(12);
+    }
+
+    @Benchmark
+    public byte[] ivStrong() throws Exception {
+        byte[] iv = new byte[12];
+        SecureRandom.getInstanceStrong().nextBytes(iv);
+        return iv;
+    }
+
+    @Benchmark
+    public String sha256() throws Exception {
+        return Hashing.sha256("P-000123456");
+    }
+
+    // A record without attachments
+    @Benchmark
+    public PatientRecord processEncryption() throws Exception {
+        PatientRecord record = new PatientRecord();
+        patientService.processEncryption(record, "Persistent cough, mild fever", "Acute bronchitis").close();
+        return record;
+    }
+}
@@ -0,0 +1,146 @@
+package benchmark;
+
+import model.MediaItem;
+import model.PatientRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import repository.MySQLHospitalRepository;
+import service.PatientService;
+import util.DBConnection;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+// Streaming one stored video from a real database: a legacy Hospital_Records cell read with SUBSTRING
+// chunks vs. an attachment read from its Patient_Media_Segments rows, in full and as a Range near the end.
+// Same -Dbench.db.user / -Dbench.db.pass as DatabaseBenchmark; the marker record is deleted after the trial.
+// The legacy cell is inserted in one packet, so sizeMb must stay below the server's max_allowed_packet.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class MediaStreamBenchmark {
+
+    private static final String DB_MARKER = "__benchmark_media__";
+    private static final int TAIL = 1024 * 1024;
+
+    @Param({"8", "32"})
+    int sizeMb;
+
+    private MySQLHospitalRepository repository;
+    private PatientRecord record;
+    private MediaItem attachment;
+    private Path staged;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    @Setup(Level.Trial)
+    public void store() throws Exception {
+        String user = System.getProperty("bench.db.user");
+        if (user == null) {
+            throw new IllegalStateException("MediaStreamBenchmark needs -Dbench.db.user and -Dbench.db.pass");
+        }
+        DBConnection.setCredentials(user, System.getProperty("bench.db.pass", ""));
+        repository = new MySQLHospitalRepository();
+
+        // The bytes are only streamed back, never decrypted, so random data stands in for ciphertext
+        byte[] media = Fixtures.randomBytes(sizeMb * 1024 * 1024);
+        staged = Files.createTempFile("bench-media", ".enc");
+        Files.write(staged, media);
+
+        record = new PatientRecord();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            new PatientService().processEncryption(record, "Persistent cough, mild fever", "Acute bronchitis").close();
+        } finally {
+            System.setOut(console);
+        }
+        record.setPatientId("BENCH-MEDIA");
+        record.setPatientName(DB_MARKER);
+        record.setPatientDob(java.sql.Date.valueOf("1980-01-01"));
+        record.setCheckInDate(new java.sql.Timestamp(System.currentTimeMillis()));
+        record.setDoctorName("Dr. Bench");
+        record.setNurseName("Nurse Bench");
+        record.setEncryptedImages(new byte[0]);
+        record.setEncryptedVideos(media);
+        record.setVideoSize((long) media.length);
+        attachment = new MediaItem("video", "video/mp4", media.length, staged);
+        record.getPendingMedia().add(attachment);
+        repository.insert(record);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws Exception {
+        try (Connection conn = DBConnection.getConnection()) {
+            for (String table : new String[]{"Patient_Media_Segments", "Patient_Media"}) {
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE media_id = ?")) {
+                    stmt.setInt(1, attachment.getMediaId());
+                    stmt.executeUpdate();
+                }
+            }
+            for (String table : new String[]{"Patient_Name_Tokens", "Patient_Term_Tokens", "Hospital_Records"}) {
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE record_index = ?")) {
+                    stmt.setInt(1, record.getRecordIndex());
+                    stmt.executeUpdate();
+                }
+            }
+        }
+        Files.deleteIfExists(staged);
+    }
+
+    @Benchmark
+    public long legacySubstring() throws Exception {
+        try (InputStream in = repository.openMediaStream(record.getRecordIndex(), "video")) {
+            return drain(in);
+        }
+    }
+
+    @Benchmark
+    public long segments() throws Exception {
+        try (InputStream in = repository.openMediaItem(attachment)) {
+            return drain(in);
+        }
+    }
+
+    @Benchmark
+    public long legacySubstringTail() throws Exception {
+        try (InputStream in = repository.openMediaStream(record.getRecordIndex(), "video")) {
+            in.skipNBytes(sizeMb * 1024L * 1024 - TAIL);
+            return drain(in);
+        }
+    }
+
+    @Benchmark
+    public long segmentsTail() throws Exception {
+        try (InputStream in = repository.openMediaItem(attachment)) {
+            in.skipNBytes(sizeMb * 1024L * 1024 - TAIL);
+            return drain(in);
+        }
+    }
+
+    private long drain(InputStream in) throws Exception {
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,33 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import service.ThumbnailGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+// Preview of a 6 MP photo, as generated for each image at insert
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThumbnailBenchmark {
+
+    private final ThumbnailGenerator thumbnails = new ThumbnailGenerator(320, 0.8f);
+    private byte[] photo;
+
+    @Setup
+    public void setup() throws Exception {
+        photo = Fixtures.syntheticJpeg(3000, 2000);
+    }
+
+    @Benchmark
+    public byte[] thumbnail6mp() throws Exception {
+        return thumbnails.generate(new ByteArrayInputStream(photo));
+    }
+}
@@ -1,15 +1,23 @@
 import model.PatientRecord;
 import repository.HospitalRepository;
 import repository.MySQLHospitalRepository;
+import repository.SchemaBootstrap;
+import repository.SearchCriteria;
+import repository.SearchPage;
+import service.KeyRing;
+import service.MediaInput;
 import service.MediaService;
 import service.PatientService;
 import util.DBConnection;
 import view.ConsoleView;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Main {
 
+    private static final int PAGE_SIZE = 20;
     private static final HospitalRepository repository = new MySQLHospitalRepository();
     private static final PatientService patientService = new PatientService();
     private static final ConsoleView view = new ConsoleView();
@@ -23,6 +31,7 @@ public class Main {
                 
                 try (java.sql.Connection conn = DBConnection.getConnection()) {
                     view.showMessage("✅ Login Successful!");
+                    SchemaBootstrap.ensureSchemaAfterLogin();
                     break;
                 } catch (Exception e) {
                     view.showMessage("❌ Login Failed: " + e.getMessage());
@@ -55,15 +64,18 @@ public class Main {
     private static void handleInsert() throws Exception {
         PatientRecord record = view.getPatientInput();
         String[] medicalData = view.getMedicalDataInput();
+        List<MediaInput> media = getMediaInputs();
+        if (media == null) return;
 
-        MediaService.MediaResult mediaResult = patientService.processEncryption(record, medicalData[0], medicalData[1]);
-
+        // The staged ciphertext is removed once the repository has stored it (or failed to)
+        MediaService.MediaResult mediaResult = patientService.processEncryption(record, medicalData[0], medicalData[1], media);
         try {
             repository.insert(record);
             view.showMessage("✅ Record inserted successfully.");
-            patientService.getMediaService().deleteProcessedFiles(mediaResult.processedFiles);
         } catch (Exception e) {
             view.showMessage("❌ Insert failed: " + e.getMessage());
+        } finally {
+            mediaResult.close();
         }
     }
 
@@ -77,20 +89,50 @@ public class Main {
             return;
         }
 
-        List<PatientRecord> results = repository.search(searchQuery[0], searchQuery[1]);
-        PatientRecord selectedRecord = view.selectRecord(results);
+        // List from the light projection; only the chosen record's encrypted payload is fetched
+        PatientRecord selectedSummary = selectFromSearch(searchQuery[0], searchQuery[1]);
         
-        if (selectedRecord == null) return;
+        if (selectedSummary == null) return;
+
+        // Media is streamed from the database while restoring, so it is not loaded with the record
+        int recordIndex = selectedSummary.getRecordIndex();
+        PatientRecord selectedRecord = repository.getById(recordIndex, false);
+        if (selectedRecord == null) {
+            view.showMessage("Record no longer exists.");
+            return;
+        }
 
         try {
             String[] decryptedData = patientService.decryptMedicalData(selectedRecord, isDoctor);
             view.displayDecryptedData(decryptedData[0], decryptedData[1]);
-            patientService.decryptAndRestore(selectedRecord, isDoctor);
+            patientService.decryptAndRestore(selectedRecord, isDoctor, kind -> repository.openMediaStream(recordIndex, kind));
+            patientService.restoreMediaItems(selectedRecord, isDoctor, repository.listMedia(List.of(recordIndex)), repository::openMediaItem);
         } catch (Exception e) {
             view.showMessage("❌ Decryption failed: " + e.getMessage());
         }
     }
 
+    // Pages through summary results until the user picks a record (or gives up)
+    private static PatientRecord selectFromSearch(String query, String type) throws Exception {
+        SearchCriteria criteria;
+        try {
+            criteria = SearchCriteria.of(query, type);
+        } catch (IllegalArgumentException e) {
+            view.showMessage("❌ " + e.getMessage());
+            return null;
+        }
+
+        String cursor = null;
+        while (true) {
+            SearchPage page = repository.searchSummaryPage(criteria, PAGE_SIZE, cursor);
+            PatientRecord selected = view.selectRecord(page.getRecords(), page.hasMore());
+            if (selected != ConsoleView.NEXT_PAGE) {
+                return selected;
+            }
+            cursor = page.getNextCursor();
+        }
+    }
+
     private static void handleUpdate() throws Exception {
         view.showMessage("\n--- Update Record ---");
         
@@ -100,28 +142,51 @@ public class Main {
         String[] searchQuery = view.getSearchQuery();
         if (searchQuery == null) return;
 
-        List<PatientRecord> results = repository.search(searchQuery[0], searchQuery[1]);
-        PatientRecord existingRecord = view.selectRecord(results);
+        PatientRecord existingRecord = selectFromSearch(searchQuery[0], searchQuery[1]);
         
         if (existingRecord == null) return;
 
-        view.showMessage("\n--- Enter NEW Details (Overwriting) ---");
-        
-        PatientRecord newRecord = new PatientRecord();
-        newRecord.setRecordIndex(existingRecord.getRecordIndex());
-        newRecord.setPatientId(existingRecord.getPatientId());
-        
-        view.fillRecordDetails(newRecord);
-        String[] medicalData = view.getMedicalDataInput();
+        // The stored data key is reused, so it has to be unwrapped with one of the role keys
+        boolean isDoctor = view.isDoctor();
+        PatientRecord record = repository.getById(existingRecord.getRecordIndex(), false);
+        if (record == null) {
+            view.showMessage("Record no longer exists.");
+            return;
+        }
 
-        MediaService.MediaResult mediaResult = patientService.processEncryption(newRecord, medicalData[0], medicalData[1]);
+        view.showMessage("\n--- Enter NEW Details (blank keeps the current value) ---");
+        view.editRecordDetails(record);
+        String[] medicalData = view.getMedicalDataChanges();
+        List<MediaInput> media = getMediaInputs();
+        if (media == null) return;
 
         try {
-            repository.update(newRecord);
-            view.showMessage("✅ Record updated successfully.");
-            patientService.getMediaService().deleteProcessedFiles(mediaResult.processedFiles);
+            MediaService.MediaResult mediaResult = patientService.applyMedicalChanges(record, KeyRing.roleOf(isDoctor), medicalData[0], medicalData[1], media);
+            try {
+                if (repository.updateChanged(record)) {
+                    view.showMessage("✅ Record updated successfully.");
+                } else {
+                    view.showMessage("Nothing changed.");
+                }
+            } finally {
+                mediaResult.close();
+            }
         } catch (Exception e) {
             view.showMessage("❌ Update failed: " + e.getMessage());
         }
     }
+
+    // The files named at the prompt, checked before anything is encrypted; null after a bad entry
+    private static List<MediaInput> getMediaInputs() {
+        List<MediaInput> media = new ArrayList<>();
+        for (String path : view.getMediaPaths()) {
+            try {
+                media.add(MediaInput.ofFile(Paths.get(path)));
+            } catch (IllegalArgumentException e) {
+                view.showMessage("❌ " + e.getMessage());
+                return null;
+            }
+        }
+        return media;
+    }
 }
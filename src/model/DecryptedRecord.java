@@ -0,0 +1,36 @@
+package model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Plaintext view of a PatientRecord, produced by PatientService.decryptRecord
+public class DecryptedRecord {
+    private final PatientRecord record;
+    private String symptoms;
+    private String diagnosis;
+    private byte[] image; // null when absent or not requested
+    private byte[] video; // null when absent or not requested
+    private final Map<Integer, byte[]> thumbnails = new HashMap<>(); // plaintext JPEG previews by media id
+
+    public DecryptedRecord(PatientRecord record) {
+        this.record = record;
+    }
+
+    public PatientRecord getRecord() { return record; }
+
+    public String getSymptoms() { return symptoms; }
+    public void setSymptoms(String symptoms) { this.symptoms = symptoms; }
+
+    public String getDiagnosis() { return diagnosis; }
+    public void setDiagnosis(String diagnosis) { this.diagnosis = diagnosis; }
+
+    public byte[] getImage() { return image; }
+    public void setImage(byte[] image) { this.image = image; }
+
+    public byte[] getVideo() { return video; }
+    public void setVideo(byte[] video) { this.video = video; }
+
+    // null when the attachment has no preview, it wasn't requested or it couldn't be decrypted
+    public byte[] getThumbnail(int mediaId) { return thumbnails.get(mediaId); }
+    public void putThumbnail(int mediaId, byte[] thumbnail) { thumbnails.put(mediaId, thumbnail); }
+}
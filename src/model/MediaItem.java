@@ -0,0 +1,50 @@
+package model;
+
+import java.nio.file.Path;
+
+// One encrypted attachment of a record (a Patient_Media row), encrypted under the record's data key.
+// Listings carry only this metadata; the ciphertext is streamed on demand.
+public class MediaItem {
+    private int mediaId;
+    private int recordIndex;
+    private String kind; // "image" or "video"
+    private String contentType;
+    private long size; // plaintext bytes
+
+    // Ciphertext staged on disk until the repository has stored it
+    private Path encryptedFile;
+
+    // Small JPEG preview of an image, encrypted under the same key; null for videos and undecodable images
+    private byte[] encryptedThumbnail;
+
+    public MediaItem() {
+    }
+
+    public MediaItem(String kind, String contentType, long size, Path encryptedFile) {
+        this.kind = kind;
+        this.contentType = contentType;
+        this.size = size;
+        this.encryptedFile = encryptedFile;
+    }
+
+    public int getMediaId() { return mediaId; }
+    public void setMediaId(int mediaId) { this.mediaId = mediaId; }
+
+    public int getRecordIndex() { return recordIndex; }
+    public void setRecordIndex(int recordIndex) { this.recordIndex = recordIndex; }
+
+    public String getKind() { return kind; }
+    public void setKind(String kind) { this.kind = kind; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public Path getEncryptedFile() { return encryptedFile; }
+    public void setEncryptedFile(Path encryptedFile) { this.encryptedFile = encryptedFile; }
+
+    public byte[] getEncryptedThumbnail() { return encryptedThumbnail; }
+    public void setEncryptedThumbnail(byte[] encryptedThumbnail) { this.encryptedThumbnail = encryptedThumbnail; }
+}
@@ -2,6 +2,12 @@ package model;
 
 import java.sql.Date;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 public class PatientRecord {
     private int recordIndex;
@@ -21,6 +27,25 @@ public class PatientRecord {
     private byte[] doctorEncryptedAesKey;
     private byte[] nurseEncryptedAesKey;
 
+    // Plaintext media sizes, stored next to the BLOBs so listings can report them without reading media; null = none
+    private Long imageSize;
+    private Long videoSize;
+
+    // Attachments encrypted for this record and not yet stored; the repository writes them to Patient_Media
+    private final List<MediaItem> pendingMedia = new ArrayList<>();
+
+    // Stored fields changed since the record was loaded (or last saved); drives partial updates
+    public enum Field {
+        PATIENT_NAME, PATIENT_DOB, CHECK_IN_DATE, DOCTOR_NAME, NURSE_NAME,
+        ENCRYPTED_SYMPTOMS, ENCRYPTED_DIAGNOSIS, ENCRYPTED_IMAGES, ENCRYPTED_VIDEOS,
+        DOCTOR_ENCRYPTED_AES_KEY, NURSE_ENCRYPTED_AES_KEY, IMAGE_SIZE, VIDEO_SIZE
+    }
+
+    private final EnumSet<Field> dirty = EnumSet.noneOf(Field.class);
+
+    // Blind-index tokens of the symptom/diagnosis terms for every role; written to the term table, not a column
+    private Set<String> termTokens;
+
     // Getters and Setters
     public int getRecordIndex() { return recordIndex; }
     public void setRecordIndex(int recordIndex) { this.recordIndex = recordIndex; }
@@ -32,35 +57,95 @@ public class PatientRecord {
     public void setPatientIdHash(String patientIdHash) { this.patientIdHash = patientIdHash; }
 
     public String getPatientName() { return patientName; }
-    public void setPatientName(String patientName) { this.patientName = patientName; }
+    public void setPatientName(String patientName) {
+        if (!Objects.equals(this.patientName, patientName)) dirty.add(Field.PATIENT_NAME);
+        this.patientName = patientName;
+    }
 
     public Date getPatientDob() { return patientDob; }
-    public void setPatientDob(Date patientDob) { this.patientDob = patientDob; }
+    public void setPatientDob(Date patientDob) {
+        if (!Objects.equals(this.patientDob, patientDob)) dirty.add(Field.PATIENT_DOB);
+        this.patientDob = patientDob;
+    }
 
     public String getDoctorName() { return doctorName; }
-    public void setDoctorName(String doctorName) { this.doctorName = doctorName; }
+    public void setDoctorName(String doctorName) {
+        if (!Objects.equals(this.doctorName, doctorName)) dirty.add(Field.DOCTOR_NAME);
+        this.doctorName = doctorName;
+    }
 
     public String getNurseName() { return nurseName; }
-    public void setNurseName(String nurseName) { this.nurseName = nurseName; }
+    public void setNurseName(String nurseName) {
+        if (!Objects.equals(this.nurseName, nurseName)) dirty.add(Field.NURSE_NAME);
+        this.nurseName = nurseName;
+    }
 
     public Timestamp getCheckInDate() { return checkInDate; }
-    public void setCheckInDate(Timestamp checkInDate) { this.checkInDate = checkInDate; }
+    public void setCheckInDate(Timestamp checkInDate) {
+        if (!Objects.equals(this.checkInDate, checkInDate)) dirty.add(Field.CHECK_IN_DATE);
+        this.checkInDate = checkInDate;
+    }
 
     public byte[] getEncryptedSymptoms() { return encryptedSymptoms; }
-    public void setEncryptedSymptoms(byte[] encryptedSymptoms) { this.encryptedSymptoms = encryptedSymptoms; }
+    public void setEncryptedSymptoms(byte[] encryptedSymptoms) {
+        if (this.encryptedSymptoms != encryptedSymptoms) dirty.add(Field.ENCRYPTED_SYMPTOMS);
+        this.encryptedSymptoms = encryptedSymptoms;
+    }
 
     public byte[] getEncryptedDiagnosis() { return encryptedDiagnosis; }
-    public void setEncryptedDiagnosis(byte[] encryptedDiagnosis) { this.encryptedDiagnosis = encryptedDiagnosis; }
+    public void setEncryptedDiagnosis(byte[] encryptedDiagnosis) {
+        if (this.encryptedDiagnosis != encryptedDiagnosis) dirty.add(Field.ENCRYPTED_DIAGNOSIS);
+        this.encryptedDiagnosis = encryptedDiagnosis;
+    }
 
     public byte[] getEncryptedImages() { return encryptedImages; }
-    public void setEncryptedImages(byte[] encryptedImages) { this.encryptedImages = encryptedImages; }
+    public void setEncryptedImages(byte[] encryptedImages) {
+        if (this.encryptedImages != encryptedImages) dirty.add(Field.ENCRYPTED_IMAGES);
+        this.encryptedImages = encryptedImages;
+    }
 
     public byte[] getEncryptedVideos() { return encryptedVideos; }
-    public void setEncryptedVideos(byte[] encryptedVideos) { this.encryptedVideos = encryptedVideos; }
+    public void setEncryptedVideos(byte[] encryptedVideos) {
+        if (this.encryptedVideos != encryptedVideos) dirty.add(Field.ENCRYPTED_VIDEOS);
+        this.encryptedVideos = encryptedVideos;
+    }
 
     public byte[] getDoctorEncryptedAesKey() { return doctorEncryptedAesKey; }
-    public void setDoctorEncryptedAesKey(byte[] doctorEncryptedAesKey) { this.doctorEncryptedAesKey = doctorEncryptedAesKey; }
+    public void setDoctorEncryptedAesKey(byte[] doctorEncryptedAesKey) {
+        if (this.doctorEncryptedAesKey != doctorEncryptedAesKey) dirty.add(Field.DOCTOR_ENCRYPTED_AES_KEY);
+        this.doctorEncryptedAesKey = doctorEncryptedAesKey;
+    }
 
     public byte[] getNurseEncryptedAesKey() { return nurseEncryptedAesKey; }
-    public void setNurseEncryptedAesKey(byte[] nurseEncryptedAesKey) { this.nurseEncryptedAesKey = nurseEncryptedAesKey; }
+    public void setNurseEncryptedAesKey(byte[] nurseEncryptedAesKey) {
+        if (this.nurseEncryptedAesKey != nurseEncryptedAesKey) dirty.add(Field.NURSE_ENCRYPTED_AES_KEY);
+        this.nurseEncryptedAesKey = nurseEncryptedAesKey;
+    }
+
+    public Long getImageSize() { return imageSize; }
+    public void setImageSize(Long imageSize) {
+        if (!Objects.equals(this.imageSize, imageSize)) dirty.add(Field.IMAGE_SIZE);
+        this.imageSize = imageSize;
+    }
+
+    public Long getVideoSize() { return videoSize; }
+    public void setVideoSize(Long videoSize) {
+        if (!Objects.equals(this.videoSize, videoSize)) dirty.add(Field.VIDEO_SIZE);
+        this.videoSize = videoSize;
+    }
+
+    public List<MediaItem> getPendingMedia() { return pendingMedia; }
+
+    public Set<String> getTermTokens() { return termTokens; }
+    public void setTermTokens(Set<String> termTokens) { this.termTokens = termTokens; }
+
+    // Setters mark a field dirty only when its value actually changes (byte arrays: when a new array is set)
+    public Set<Field> getDirtyFields() { return Collections.unmodifiableSet(dirty); }
+    public boolean isDirty() { return !dirty.isEmpty(); }
+    public void clearDirty() { dirty.clear(); }
+
+    // For repositories: fields just loaded from storage match what is stored
+    public void markClean(Field... fields) {
+        for (Field field : fields) dirty.remove(field);
+    }
 }
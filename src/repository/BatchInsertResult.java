@@ -0,0 +1,18 @@
+package repository;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Outcome of HospitalRepository.insertAll: how many rows were stored and why the others were not
+public class BatchInsertResult {
+    private int insertedCount;
+    private final Map<Integer, String> failures = new LinkedHashMap<>(); // position in the input -> error
+
+    void addInserted(int count) { insertedCount += count; }
+    void addFailure(int position, String error) { failures.put(position, error); }
+
+    public int getInsertedCount() { return insertedCount; }
+    public Map<Integer, String> getFailures() { return Collections.unmodifiableMap(failures); }
+    public boolean hasFailures() { return !failures.isEmpty(); }
+}
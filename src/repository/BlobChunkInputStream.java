@@ -0,0 +1,112 @@
+package repository;
+
+import util.DBConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Reads one legacy Hospital_Records media cell (encrypted_images / encrypted_videos) in fixed-size SUBSTRING ranges.
+// Connector/J materializes each row packet whole, so a plain getBinaryStream on a 500 MB cell would
+// still buffer all of it inside the driver; ranged reads keep at most one chunk in memory.
+// Cost: InnoDB copies the whole off-page value into the row before SUBSTRING is applied, so every chunk
+// query reads the full cell on the server and a download is O(size^2 / CHUNK_SIZE) there
+// (MediaStreamBenchmark). Attachments avoid this by being stored as segment rows (MediaSegmentInputStream);
+// these columns only hold media written before Patient_Media. Chunks are separate statements, so a
+// concurrent update of the record could mix old and new bytes; the decryptor's chunk tags reject that.
+// A pooled connection is borrowed per chunk and handed straight back, so a slow client downloading a video
+// doesn't pin one of the pool's few connections for minutes. skip() just moves the read position,
+// which makes byte-range reads cheap in memory (not on the server, see above).
+class BlobChunkInputStream extends InputStream {
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final String sql;
+    private final int key;
+    private final long length;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int bufferPos;
+    private int bufferLen;
+    private long nextFetch; // 0-based offset of the first byte not yet fetched
+    private boolean closed;
+
+    // The column name comes from a fixed whitelist in the repository, never from user input
+    BlobChunkInputStream(String column, int recordIndex, long length) {
+        this.sql = "SELECT SUBSTRING(" + column + ", ?, ?) FROM Hospital_Records WHERE record_index = ?";
+        this.key = recordIndex;
+        this.length = length;
+    }
+
+    long length() {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return buffer[bufferPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int n = Math.min(len, bufferLen - bufferPos);
+        System.arraycopy(buffer, bufferPos, b, off, n);
+        bufferPos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        int inBuffer = bufferLen - bufferPos;
+        if (n <= inBuffer) {
+            bufferPos += (int) n;
+            return n;
+        }
+        long skipped = Math.min(n, inBuffer + (length - nextFetch));
+        nextFetch += skipped - inBuffer;
+        bufferPos = bufferLen = 0;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return bufferLen - bufferPos;
+    }
+
+    private boolean fill() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (bufferPos < bufferLen) return true;
+        if (nextFetch >= length) return false;
+
+        int want = (int) Math.min(CHUNK_SIZE, length - nextFetch);
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setLong(1, nextFetch + 1); // SUBSTRING is 1-based
+            stmt.setInt(2, want);
+            stmt.setInt(3, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) throw new IOException("Record disappeared while streaming");
+                try (InputStream chunk = rs.getBinaryStream(1)) {
+                    bufferLen = chunk == null ? 0 : chunk.readNBytes(buffer, 0, want);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read media chunk", e);
+        }
+        if (bufferLen == 0) throw new IOException("Media shorter than expected");
+        bufferPos = 0;
+        nextFetch += bufferLen;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
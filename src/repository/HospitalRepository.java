@@ -1,12 +1,35 @@
 package repository;
 
+import model.MediaItem;
 import model.PatientRecord;
+import java.io.InputStream;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 public interface HospitalRepository {
     void insert(PatientRecord record) throws SQLException;
+    BatchInsertResult insertAll(Collection<PatientRecord> records) throws SQLException;
     void update(PatientRecord record) throws SQLException;
+    // Writes only the record's dirty fields; false when there was nothing to write or the record is gone
+    boolean updateChanged(PatientRecord record) throws SQLException;
+    // The short forms load the text payload and wrapped keys but no media BLOBs (see openMediaStream)
     List<PatientRecord> search(String query, String type) throws SQLException;
+    List<PatientRecord> search(String query, String type, boolean includeMedia) throws SQLException;
+    // Keyset-paginated variants ordered by (patient_name, record_index); cursor is null for the first page
+    SearchPage searchPage(String query, String type, int limit, String cursor, boolean includeMedia) throws SQLException;
+    SearchPage searchSummaryPage(String query, String type, int limit, String cursor) throws SQLException;
+    // Structured search; the (query, type) forms above are mapped onto SearchCriteria.of
+    SearchPage searchPage(SearchCriteria criteria, int limit, String cursor, boolean includeMedia) throws SQLException;
+    SearchPage searchSummaryPage(SearchCriteria criteria, int limit, String cursor) throws SQLException;
     PatientRecord getById(int recordIndex) throws SQLException;
+    PatientRecord getById(int recordIndex, boolean includeMedia) throws SQLException;
+    // Streams one encrypted media column ("image" or "video") in fixed-size chunks; null when empty
+    InputStream openMediaStream(int recordIndex, String kind) throws SQLException;
+    // Attachments (Patient_Media): metadata for a page of records, one item checked against its record, and its ciphertext
+    List<MediaItem> listMedia(Collection<Integer> recordIndexes) throws SQLException;
+    // Same, with each image's encrypted thumbnail for previews
+    List<MediaItem> listMedia(Collection<Integer> recordIndexes, boolean includeThumbnails) throws SQLException;
+    MediaItem getMediaItem(int recordIndex, int mediaId) throws SQLException;
+    InputStream openMediaItem(MediaItem item) throws SQLException;
 }
@@ -0,0 +1,110 @@
+package repository;
+
+import util.DBConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Streams one attachment's ciphertext from its Patient_Media_Segments rows, one segment per primary-key lookup.
+// Unlike SUBSTRING over a single LONGBLOB (see BlobChunkInputStream), each query reads only the segment it
+// returns, so a full download is linear in the media size and a range near the end of a large video costs one
+// segment. Like BlobChunkInputStream, a pooled connection is borrowed per segment and handed straight back.
+// Each lookup is a single autocommit SELECT, i.e. its own read-only transaction; a consistent view across
+// lookups comes from the segments being written with their Patient_Media row in one transaction and never
+// updated afterwards.
+class MediaSegmentInputStream extends InputStream {
+
+    static final int SEGMENT_SIZE = 1024 * 1024;
+
+    static final String SEGMENTS_TABLE = "Patient_Media_Segments";
+
+    private static final String SEGMENT_SQL = "SELECT data FROM " + SEGMENTS_TABLE + " WHERE media_id = ? AND seq = ?";
+
+    private final int mediaId;
+    private final long length;
+    private final byte[] buffer = new byte[SEGMENT_SIZE];
+    private long bufferStart = -1; // offset of buffer[0] in the media, -1 before the first lookup
+    private int bufferLen;
+    private long position; // offset of the next byte to return
+    private boolean closed;
+
+    MediaSegmentInputStream(int mediaId, long length) {
+        this.mediaId = mediaId;
+        this.length = length;
+    }
+
+    long length() {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return buffer[(int) (position++ - bufferStart)] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int from = (int) (position - bufferStart);
+        int n = Math.min(len, bufferLen - from);
+        System.arraycopy(buffer, from, b, off, n);
+        position += n;
+        return n;
+    }
+
+    // Only moves the position; the segment holding it is fetched on the next read
+    @Override
+    public long skip(long n) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, length - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        boolean buffered = bufferStart >= 0 && position >= bufferStart && position < bufferStart + bufferLen;
+        return buffered ? (int) (bufferStart + bufferLen - position) : 0;
+    }
+
+    private boolean fill() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (position >= length) return false;
+        if (available() > 0) return true;
+
+        int seq = (int) (position / SEGMENT_SIZE);
+        long start = (long) seq * SEGMENT_SIZE;
+        int expected = (int) Math.min(SEGMENT_SIZE, length - start);
+        bufferStart = -1; // the buffer is invalid until this segment has been read in full
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SEGMENT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setInt(1, mediaId);
+            stmt.setInt(2, seq);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) throw new IOException("Media " + mediaId + " is missing segment " + seq);
+                try (InputStream segment = rs.getBinaryStream(1)) {
+                    bufferLen = segment.readNBytes(buffer, 0, expected);
+                    if (bufferLen != expected || segment.read() != -1) {
+                        throw new IOException("Media " + mediaId + " segment " + seq + " has an unexpected length");
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read media segment", e);
+        }
+        bufferStart = start;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -1,43 +1,373 @@
 package repository;
 
+import model.MediaItem;
 import model.PatientRecord;
+import model.PatientRecord.Field;
+import service.KeyService;
+import util.BlindIndex;
 import util.DBConnection;
 import util.Hashing;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class MySQLHospitalRepository implements HospitalRepository {
 
-    @Override
-    public void insert(PatientRecord record) throws SQLException {
-        String sql = """
+    private static final String INSERT_SQL = """
             INSERT INTO Hospital_Records
             (patient_id_hash, patient_name, patient_dob, check_in_date, doctor_name, nurse_name,
              encrypted_symptoms, encrypted_diagnosis, encrypted_images, encrypted_videos,
-             doctor_encrypted_aes_key, nurse_encrypted_aes_key)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+             doctor_encrypted_aes_key, nurse_encrypted_aes_key, image_size, video_size)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
         """;
 
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final String NAME_TOKENS_TABLE = "Patient_Name_Tokens";
+    private static final String TERM_TOKENS_TABLE = "Patient_Term_Tokens";
+    private static final String MEDIA_TABLE = "Patient_Media";
+
+    private final BlindIndex nameIndex; // null when no index key is configured; name search then scans
 
-            stmt.setString(1, Hashing.sha256(record.getPatientId()));
-            stmt.setString(2, record.getPatientName());
-            stmt.setDate(3, record.getPatientDob());
-            stmt.setTimestamp(4, record.getCheckInDate());
-            stmt.setString(5, record.getDoctorName());
-            stmt.setString(6, record.getNurseName());
-            stmt.setBytes(7, record.getEncryptedSymptoms());
-            stmt.setBytes(8, record.getEncryptedDiagnosis());
-            stmt.setBytes(9, record.getEncryptedImages());
-            stmt.setBytes(10, record.getEncryptedVideos());
-            stmt.setBytes(11, record.getDoctorEncryptedAesKey());
-            stmt.setBytes(12, record.getNurseEncryptedAesKey());
+    private int batchSize = 500;
+    private int transactionSize = 5000; // rows per commit in insertAll; 0 commits once at the end
 
+    public MySQLHospitalRepository() {
+        this(loadNameIndex());
+    }
+
+    public MySQLHospitalRepository(BlindIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    private static BlindIndex loadNameIndex() {
+        if (!Files.exists(Path.of(KeyService.INDEX_KEY))) {
+            System.out.println("⚠️ No search index key at " + KeyService.INDEX_KEY + "; name search will scan the table.");
+            return null;
+        }
+        try {
+            return new BlindIndex(new KeyService().loadIndexKey(KeyService.INDEX_KEY));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot load search index key: " + e.getMessage(), e);
+        }
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public void setTransactionSize(int transactionSize) {
+        if (transactionSize < 0) throw new IllegalArgumentException("transactionSize must not be negative");
+        this.transactionSize = transactionSize;
+    }
+
+    @Override
+    public void insert(PatientRecord record) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false); // the row and its name tokens are stored together
+
+            bindInsert(stmt, record);
             stmt.executeUpdate();
+            assignGeneratedKeys(stmt, List.of(record));
+            writeSearchTokens(conn, List.of(record), false, true);
+            writeMedia(conn, List.of(record));
+            conn.commit();
+            record.clearDirty();
+            record.getPendingMedia().clear();
+        }
+    }
+
+    // Inserts in JDBC batches (rewritten into multi-row INSERTs by the connector), committing every
+    // transactionSize rows. If a batch fails, its transaction is rolled back and replayed row by row
+    // so that only the offending rows are reported and the rest are still stored.
+    @Override
+    public BatchInsertResult insertAll(Collection<PatientRecord> records) throws SQLException {
+        BatchInsertResult result = new BatchInsertResult();
+        List<PatientRecord> rows = new ArrayList<>(records);
+        int txSize = transactionSize == 0 ? Math.max(1, rows.size()) : transactionSize;
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false);
+
+            for (int txStart = 0; txStart < rows.size(); txStart += txSize) {
+                int txEnd = Math.min(rows.size(), txStart + txSize);
+                try {
+                    int inserted = insertTransaction(conn, stmt, rows, txStart, txEnd, result);
+                    conn.commit();
+                    result.addInserted(inserted);
+                } catch (BatchUpdateException e) {
+                    conn.rollback();
+                    stmt.clearBatch();
+                    result.addInserted(replayRowByRow(conn, stmt, rows, txStart, txEnd, result));
+                    conn.commit();
+                }
+                // Kept until committed, so a rolled-back batch replays its attachments too
+                for (PatientRecord row : rows.subList(txStart, txEnd)) {
+                    row.getPendingMedia().clear();
+                }
+            }
+        }
+        return result;
+    }
+
+    private int insertTransaction(Connection conn, PreparedStatement stmt, List<PatientRecord> rows, int from, int to,
+                                  BatchInsertResult result) throws SQLException {
+        int inserted = 0;
+        List<PatientRecord> pending = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            try {
+                bindInsert(stmt, rows.get(i));
+            } catch (RuntimeException e) {
+                // Row cannot even be bound (e.g. missing patient ID); skip it
+                result.addFailure(i, e.toString());
+                stmt.clearParameters();
+                continue;
+            }
+            stmt.addBatch();
+            pending.add(rows.get(i));
+            if (pending.size() == batchSize) {
+                inserted += executeInsertBatch(conn, stmt, pending);
+            }
+        }
+        if (!pending.isEmpty()) {
+            inserted += executeInsertBatch(conn, stmt, pending);
+        }
+        return inserted;
+    }
+
+    private int executeInsertBatch(Connection conn, PreparedStatement stmt, List<PatientRecord> pending) throws SQLException {
+        int count = pending.size();
+        stmt.executeBatch();
+        assignGeneratedKeys(stmt, pending);
+        writeSearchTokens(conn, pending, false, true);
+        writeMedia(conn, pending);
+        pending.clear();
+        return count;
+    }
+
+    private int replayRowByRow(Connection conn, PreparedStatement stmt, List<PatientRecord> rows, int from, int to,
+                               BatchInsertResult result) throws SQLException {
+        int inserted = 0;
+        for (int i = from; i < to; i++) {
+            if (result.getFailures().containsKey(i)) continue;
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                bindInsert(stmt, rows.get(i));
+                stmt.executeUpdate();
+                assignGeneratedKeys(stmt, List.of(rows.get(i)));
+                writeSearchTokens(conn, List.of(rows.get(i)), false, true);
+                writeMedia(conn, List.of(rows.get(i)));
+                inserted++;
+            } catch (SQLException e) {
+                conn.rollback(savepoint);
+                result.addFailure(i, e.getMessage());
+            }
+        }
+        return inserted;
+    }
+
+    private void bindInsert(PreparedStatement stmt, PatientRecord record) throws SQLException {
+        stmt.setString(1, Hashing.sha256(record.getPatientId()));
+        stmt.setString(2, record.getPatientName());
+        stmt.setDate(3, record.getPatientDob());
+        stmt.setTimestamp(4, record.getCheckInDate());
+        stmt.setString(5, record.getDoctorName());
+        stmt.setString(6, record.getNurseName());
+        stmt.setBytes(7, record.getEncryptedSymptoms());
+        stmt.setBytes(8, record.getEncryptedDiagnosis());
+        stmt.setBytes(9, record.getEncryptedImages());
+        stmt.setBytes(10, record.getEncryptedVideos());
+        stmt.setBytes(11, record.getDoctorEncryptedAesKey());
+        stmt.setBytes(12, record.getNurseEncryptedAesKey());
+        setSize(stmt, 13, record.getImageSize());
+        setSize(stmt, 14, record.getVideoSize());
+    }
+
+    private static void setSize(PreparedStatement stmt, int index, Long size) throws SQLException {
+        if (size == null) {
+            stmt.setNull(index, Types.BIGINT);
+        } else {
+            stmt.setLong(index, size);
+        }
+    }
+
+    // Copies the auto-increment keys of the rows just inserted back onto their records, in insertion order
+    private static void assignGeneratedKeys(PreparedStatement stmt, List<PatientRecord> records) throws SQLException {
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            for (PatientRecord record : records) {
+                if (!keys.next()) throw new SQLException("Missing generated key for inserted record");
+                record.setRecordIndex(keys.getInt(1));
+            }
+        }
+    }
+
+    // Stores the blind-index tokens of each record (name trigrams unless withNames=false, and its term tokens
+    // when present) in the caller's transaction; replace=true first drops the tokens the record had before
+    private void writeSearchTokens(Connection conn, List<PatientRecord> records, boolean replace, boolean withNames) throws SQLException {
+        if (withNames && nameIndex != null) {
+            Map<Integer, Set<String>> names = new LinkedHashMap<>();
+            for (PatientRecord record : records) {
+                names.put(record.getRecordIndex(), nameTokens(record));
+            }
+            writeTokens(conn, NAME_TOKENS_TABLE, names, replace);
+        }
+        Map<Integer, Set<String>> terms = new LinkedHashMap<>();
+        for (PatientRecord record : records) {
+            if (record.getTermTokens() != null) {
+                terms.put(record.getRecordIndex(), record.getTermTokens());
+            }
+        }
+        writeTokens(conn, TERM_TOKENS_TABLE, terms, replace);
+    }
+
+    // Stores the records' pending attachments in the caller's transaction, streaming each staged file into
+    // fixed-size segment rows, and fills in their media ids
+    private static void writeMedia(Connection conn, List<PatientRecord> records) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO " + MEDIA_TABLE + " (record_index, kind, content_type, size, encrypted_length, encrypted_thumbnail)"
+                        + " VALUES (?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement segments = conn.prepareStatement(
+                     "INSERT INTO " + MediaSegmentInputStream.SEGMENTS_TABLE + " (media_id, seq, data) VALUES (?, ?, ?)")) {
+            byte[] segment = null;
+            for (PatientRecord record : records) {
+                for (MediaItem item : record.getPendingMedia()) {
+                    Path file = item.getEncryptedFile();
+                    try (InputStream in = Files.newInputStream(file)) {
+                        stmt.setInt(1, record.getRecordIndex());
+                        stmt.setString(2, item.getKind());
+                        stmt.setString(3, item.getContentType());
+                        stmt.setLong(4, item.getSize());
+                        stmt.setLong(5, Files.size(file));
+                        if (item.getEncryptedThumbnail() != null) {
+                            stmt.setBytes(6, item.getEncryptedThumbnail());
+                        } else {
+                            stmt.setNull(6, Types.BLOB);
+                        }
+                        stmt.executeUpdate();
+                        try (ResultSet keys = stmt.getGeneratedKeys()) {
+                            if (!keys.next()) throw new SQLException("Missing generated key for inserted media");
+                            item.setMediaId(keys.getInt(1));
+                        }
+
+                        // One row per segment; each is sent before the buffer is refilled
+                        if (segment == null) segment = new byte[MediaSegmentInputStream.SEGMENT_SIZE];
+                        int seq = 0;
+                        int n;
+                        while ((n = in.readNBytes(segment, 0, segment.length)) > 0) {
+                            segments.setInt(1, item.getMediaId());
+                            segments.setInt(2, seq++);
+                            segments.setBinaryStream(3, new ByteArrayInputStream(segment, 0, n), n);
+                            segments.executeUpdate();
+                        }
+                    } catch (IOException e) {
+                        throw new SQLException("Cannot read staged media " + file, e);
+                    }
+                    item.setRecordIndex(record.getRecordIndex());
+                }
+            }
+        }
+    }
+
+    private Set<String> nameTokens(PatientRecord record) {
+        return nameIndex.ngramTokens(SearchCriteria.NAME_DOMAIN, record.getPatientName());
+    }
+
+    private static void writeTokens(Connection conn, String table, Map<Integer, Set<String>> tokensByRecord,
+                                    boolean replace) throws SQLException {
+        if (tokensByRecord.isEmpty()) return;
+        // Table names come from the constants above, never from input
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM " + table + " WHERE record_index = ?");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO " + table + " (token, record_index) VALUES (?, ?)")) {
+            boolean anyTokens = false;
+            for (Map.Entry<Integer, Set<String>> entry : tokensByRecord.entrySet()) {
+                if (replace) {
+                    delete.setInt(1, entry.getKey());
+                    delete.addBatch();
+                }
+                for (String token : entry.getValue()) {
+                    insert.setString(1, token);
+                    insert.setInt(2, entry.getKey());
+                    insert.addBatch();
+                    anyTokens = true;
+                }
+            }
+            if (replace) delete.executeBatch();
+            if (anyTokens) insert.executeBatch();
+        }
+    }
+
+    // Computes the tokens to store for one record while rebuilding an index
+    public interface RecordTokenizer {
+        Set<String> tokens(PatientRecord record) throws Exception;
+    }
+
+    // One-off backfill for rows stored before the name index existed (or after a key change):
+    // rewrites the tokens of every record, pageSize records per transaction. Returns the number of records indexed.
+    public int rebuildNameIndex(int pageSize) throws SQLException {
+        if (nameIndex == null) {
+            throw new IllegalStateException("No search index key at " + KeyService.INDEX_KEY);
         }
+        return rebuildTokens(NAME_TOKENS_TABLE, false, pageSize, this::nameTokens);
+    }
+
+    // Same for the term index; the tokenizer receives each record with its encrypted text and wrapped keys
+    public int rebuildTermIndex(RecordTokenizer tokenizer, int pageSize) throws SQLException {
+        return rebuildTokens(TERM_TOKENS_TABLE, true, pageSize, tokenizer);
+    }
+
+    private int rebuildTokens(String table, boolean withPayload, int pageSize, RecordTokenizer tokenizer) throws SQLException {
+        int indexed = 0;
+        int after = 0;
+        String columns = withPayload ? RECORD_COLUMNS : SUMMARY_COLUMNS;
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement select = conn.prepareStatement(
+                     "SELECT " + columns + " FROM Hospital_Records WHERE record_index > ? ORDER BY record_index LIMIT ?")) {
+            conn.setAutoCommit(false);
+            while (true) {
+                select.setInt(1, after);
+                select.setInt(2, pageSize);
+                Map<Integer, Set<String>> page = new LinkedHashMap<>();
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        PatientRecord record = mapSummary(rs);
+                        if (withPayload) {
+                            mapPayload(rs, record);
+                        }
+                        after = record.getRecordIndex();
+                        rows++;
+                        try {
+                            page.put(record.getRecordIndex(), tokenizer.tokens(record));
+                        } catch (Exception e) {
+                            System.out.println("⚠️ Skipping record " + record.getRecordIndex() + ": " + e.getMessage());
+                        }
+                    }
+                }
+                if (rows == 0) break;
+
+                writeTokens(conn, table, page, true);
+                conn.commit();
+                indexed += page.size();
+                System.out.println("🔎 Indexed " + indexed + " records...");
+            }
+        }
+        return indexed;
     }
 
     @Override
@@ -54,12 +384,15 @@ public class MySQLHospitalRepository implements HospitalRepository {
                 encrypted_images = ?,
                 encrypted_videos = ?,
                 doctor_encrypted_aes_key = ?,
-                nurse_encrypted_aes_key = ?
+                nurse_encrypted_aes_key = ?,
+                image_size = ?,
+                video_size = ?
             WHERE record_index = ?
         """;
 
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false); // the new name and its tokens change together
 
             stmt.setString(1, record.getPatientName());
             stmt.setDate(2, record.getPatientDob());
@@ -72,63 +405,346 @@ public class MySQLHospitalRepository implements HospitalRepository {
             stmt.setBytes(9, record.getEncryptedVideos());
             stmt.setBytes(10, record.getDoctorEncryptedAesKey());
             stmt.setBytes(11, record.getNurseEncryptedAesKey());
-            stmt.setInt(12, record.getRecordIndex());
+            setSize(stmt, 12, record.getImageSize());
+            setSize(stmt, 13, record.getVideoSize());
+            stmt.setInt(14, record.getRecordIndex());
 
-            stmt.executeUpdate();
+            if (stmt.executeUpdate() > 0) {
+                writeSearchTokens(conn, List.of(record), true, true);
+                writeMedia(conn, List.of(record));
+            }
+            conn.commit();
+            record.clearDirty();
+            record.getPendingMedia().clear();
         }
     }
 
+    // Partial update: writes only the fields marked dirty on the record, so untouched BLOBs and wrapped keys
+    // are neither re-sent nor rewritten. Returns false (without touching the database) when nothing changed.
     @Override
-    public List<PatientRecord> search(String query, String type) throws SQLException {
-        String sql = "";
-        if (type.equals("id")) {
-            // ID is hashed, so we must search for the exact hash
-            sql = "SELECT * FROM Hospital_Records WHERE patient_id_hash = ?";
-        } else if (type.equals("name")) {
-            // Use LIKE for partial matches, sort exact matches to the top
-            sql = "SELECT * FROM Hospital_Records WHERE patient_name LIKE ? ORDER BY CASE WHEN patient_name = ? THEN 0 ELSE 1 END, patient_name";
-        } else if (type.equals("dob")) {
-            // Cast DATE to CHAR to allow partial search (e.g. "2000" finds all dates in 2000)
-            sql = "SELECT * FROM Hospital_Records WHERE CAST(patient_dob AS CHAR) LIKE ?";
+    public boolean updateChanged(PatientRecord record) throws SQLException {
+        Set<Field> changed = record.getDirtyFields();
+        if (changed.isEmpty() && record.getTermTokens() == null && record.getPendingMedia().isEmpty()) {
+            return false;
+        }
+
+        List<Field> fields = new ArrayList<>(changed);
+        StringBuilder sql = new StringBuilder("UPDATE Hospital_Records SET ");
+        for (int i = 0; i < fields.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(column(fields.get(i))).append(" = ?");
+        }
+        sql.append(" WHERE record_index = ?");
+
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false); // changed columns and their tokens change together
+            boolean found = true;
+            if (!fields.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < fields.size(); i++) {
+                        bindField(stmt, i + 1, fields.get(i), record);
+                    }
+                    stmt.setInt(fields.size() + 1, record.getRecordIndex());
+                    found = stmt.executeUpdate() > 0;
+                }
+            }
+            if (found) {
+                writeSearchTokens(conn, List.of(record), true, changed.contains(Field.PATIENT_NAME));
+                writeMedia(conn, List.of(record));
+            }
+            conn.commit();
+            record.clearDirty();
+            record.getPendingMedia().clear();
+            return found;
+        }
+    }
+
+    private static String column(Field field) {
+        return field.name().toLowerCase(Locale.ROOT); // enum constants mirror the column names
+    }
+
+    private void bindField(PreparedStatement stmt, int index, Field field, PatientRecord record) throws SQLException {
+        switch (field) {
+            case PATIENT_NAME -> stmt.setString(index, record.getPatientName());
+            case PATIENT_DOB -> stmt.setDate(index, record.getPatientDob());
+            case CHECK_IN_DATE -> stmt.setTimestamp(index, record.getCheckInDate());
+            case DOCTOR_NAME -> stmt.setString(index, record.getDoctorName());
+            case NURSE_NAME -> stmt.setString(index, record.getNurseName());
+            case ENCRYPTED_SYMPTOMS -> stmt.setBytes(index, record.getEncryptedSymptoms());
+            case ENCRYPTED_DIAGNOSIS -> stmt.setBytes(index, record.getEncryptedDiagnosis());
+            case ENCRYPTED_IMAGES -> stmt.setBytes(index, record.getEncryptedImages());
+            case ENCRYPTED_VIDEOS -> stmt.setBytes(index, record.getEncryptedVideos());
+            case DOCTOR_ENCRYPTED_AES_KEY -> stmt.setBytes(index, record.getDoctorEncryptedAesKey());
+            case NURSE_ENCRYPTED_AES_KEY -> stmt.setBytes(index, record.getNurseEncryptedAesKey());
+            case IMAGE_SIZE -> setSize(stmt, index, record.getImageSize());
+            case VIDEO_SIZE -> setSize(stmt, index, record.getVideoSize());
         }
+    }
+
+    // Column projections: listing needs only the summary, decrypting text adds the wrapped keys, media is fetched on demand
+    private static final String SUMMARY_COLUMNS =
+            "record_index, patient_name, patient_dob, check_in_date, doctor_name, nurse_name, image_size, video_size";
+    private static final String RECORD_COLUMNS = SUMMARY_COLUMNS
+            + ", encrypted_symptoms, encrypted_diagnosis, doctor_encrypted_aes_key, nurse_encrypted_aes_key";
+    private static final String MEDIA_COLUMNS = "encrypted_images, encrypted_videos";
 
+    @Override
+    public List<PatientRecord> search(String query, String type) throws SQLException {
+        return search(query, type, false);
+    }
+
+    @Override
+    public List<PatientRecord> search(String query, String type, boolean includeMedia) throws SQLException {
+        String columns = includeMedia ? RECORD_COLUMNS + ", " + MEDIA_COLUMNS : RECORD_COLUMNS;
         List<PatientRecord> results = new ArrayList<>();
         try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = prepareSearch(conn, columns, query, type)) {
 
-            if (type.equals("id")) {
-                stmt.setString(1, Hashing.sha256(query));
-            } else if (type.equals("name")) {
-                stmt.setString(1, "%" + query + "%");
-                stmt.setString(2, query);
-            } else if (type.equals("dob")) {
-                stmt.setString(1, "%" + query + "%");
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                PatientRecord record = mapSummary(rs);
+                mapPayload(rs, record);
+                if (includeMedia) {
+                    mapMedia(rs, record);
+                }
+                results.add(record);
             }
+        }
+        return results;
+    }
+
+    private PreparedStatement prepareSearch(Connection conn, String columns, String query, String type) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String where = SearchCriteria.of(query, type).toSql(params, nameIndex);
+        return prepare(conn, "SELECT " + columns + " FROM Hospital_Records WHERE " + where
+                + " ORDER BY patient_name, record_index", params);
+    }
+
+    private PreparedStatement prepare(Connection conn, String sql, List<Object> params) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+        return stmt;
+    }
+
+    @Override
+    public SearchPage searchPage(String query, String type, int limit, String cursor, boolean includeMedia) throws SQLException {
+        return searchPage(SearchCriteria.of(query, type), limit, cursor, includeMedia);
+    }
+
+    @Override
+    public SearchPage searchPage(SearchCriteria criteria, int limit, String cursor, boolean includeMedia) throws SQLException {
+        String columns = includeMedia ? RECORD_COLUMNS + ", " + MEDIA_COLUMNS : RECORD_COLUMNS;
+        return fetchPage(columns, criteria, limit, cursor, true, includeMedia);
+    }
+
+    @Override
+    public SearchPage searchSummaryPage(String query, String type, int limit, String cursor) throws SQLException {
+        return searchSummaryPage(SearchCriteria.of(query, type), limit, cursor);
+    }
+
+    @Override
+    public SearchPage searchSummaryPage(SearchCriteria criteria, int limit, String cursor) throws SQLException {
+        return fetchPage(SUMMARY_COLUMNS, criteria, limit, cursor, false, false);
+    }
+
+    // Keyset pagination: seek past the previous page's last (patient_name, record_index) instead of using
+    // OFFSET, so each page costs the same however deep it is. One extra row is read to detect a next page.
+    private SearchPage fetchPage(String columns, SearchCriteria criteria, int limit, String cursor,
+                                 boolean withPayload, boolean withMedia) throws SQLException {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<Object> params = new ArrayList<>();
+        String sql = pageSql(columns, criteria, pageSize, cursor, params);
+
+        List<PatientRecord> records = new ArrayList<>();
+        boolean more = false;
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = prepare(conn, sql, params)) {
 
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                results.add(mapResultSetToRecord(rs));
+                if (records.size() == pageSize) {
+                    more = true;
+                    break;
+                }
+                PatientRecord record = mapSummary(rs);
+                if (withPayload) {
+                    mapPayload(rs, record);
+                }
+                if (withMedia) {
+                    mapMedia(rs, record);
+                }
+                records.add(record);
             }
         }
-        return results;
+
+        String nextCursor = null;
+        if (more) {
+            PatientRecord last = records.get(records.size() - 1);
+            nextCursor = PageCursor.encode(last.getPatientName(), last.getRecordIndex());
+        }
+        return new SearchPage(records, nextCursor);
+    }
+
+    private String pageSql(String columns, SearchCriteria criteria, int pageSize, String cursor, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns)
+                .append(" FROM Hospital_Records WHERE ").append(criteria.toSql(params, nameIndex));
+        if (cursor != null && !cursor.isEmpty()) {
+            PageCursor after = PageCursor.decode(cursor);
+            sql.append(" AND (patient_name > ? OR (patient_name = ? AND record_index > ?))");
+            params.add(after.patientName);
+            params.add(after.patientName);
+            params.add(after.recordIndex);
+        }
+        return sql.append(" ORDER BY patient_name, record_index LIMIT ").append(pageSize + 1).toString();
+    }
+
+    // Runs EXPLAIN on the first-page query for these criteria; one map per plan row
+    // (table, type, possible_keys, key, rows, Extra, ...) so callers can check which index was chosen
+    public List<Map<String, String>> explainSearch(SearchCriteria criteria) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = pageSql(SUMMARY_COLUMNS, criteria, 20, null, params);
+        List<Map<String, String>> plan = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = prepare(conn, "EXPLAIN " + sql, params)) {
+
+            ResultSet rs = stmt.executeQuery();
+            ResultSetMetaData meta = rs.getMetaData();
+            while (rs.next()) {
+                Map<String, String> row = new LinkedHashMap<>();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    row.put(meta.getColumnLabel(i), rs.getString(i));
+                }
+                plan.add(row);
+            }
+        }
+        return plan;
     }
 
     @Override
     public PatientRecord getById(int recordIndex) throws SQLException {
-        String sql = "SELECT * FROM Hospital_Records WHERE record_index = ?";
+        return getById(recordIndex, false);
+    }
+
+    @Override
+    public PatientRecord getById(int recordIndex, boolean includeMedia) throws SQLException {
+        String columns = includeMedia ? RECORD_COLUMNS + ", " + MEDIA_COLUMNS : RECORD_COLUMNS;
+        String sql = "SELECT " + columns + " FROM Hospital_Records WHERE record_index = ?";
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
             stmt.setInt(1, recordIndex);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                return mapResultSetToRecord(rs);
+                PatientRecord record = mapSummary(rs);
+                mapPayload(rs, record);
+                if (includeMedia) {
+                    mapMedia(rs, record);
+                }
+                return record;
             }
         }
         return null;
     }
 
-    private PatientRecord mapResultSetToRecord(ResultSet rs) throws SQLException {
+    // Opens a chunked stream over one encrypted media cell ("image" or "video"); null if the record has none.
+    // The stream borrows a pooled connection only while it fetches each chunk.
+    @Override
+    public InputStream openMediaStream(int recordIndex, String kind) throws SQLException {
+        String column = mediaColumn(kind);
+        long length;
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT OCTET_LENGTH(" + column + ") FROM Hospital_Records WHERE record_index = ?")) {
+            stmt.setInt(1, recordIndex);
+            ResultSet rs = stmt.executeQuery();
+            length = rs.next() ? rs.getLong(1) : 0;
+        }
+        return length > 0 ? new BlobChunkInputStream(column, recordIndex, length) : null;
+    }
+
+    // Attachment metadata of the given records, ordered by record then upload order; no BLOBs are read
+    @Override
+    public List<MediaItem> listMedia(Collection<Integer> recordIndexes) throws SQLException {
+        return listMedia(recordIndexes, false);
+    }
+
+    // With includeThumbnails the small encrypted previews come along; the media BLOBs never do
+    @Override
+    public List<MediaItem> listMedia(Collection<Integer> recordIndexes, boolean includeThumbnails) throws SQLException {
+        List<MediaItem> items = new ArrayList<>();
+        if (recordIndexes.isEmpty()) return items;
+        String columns = includeThumbnails ? MEDIA_ITEM_COLUMNS + ", encrypted_thumbnail" : MEDIA_ITEM_COLUMNS;
+        String placeholders = String.join(", ", Collections.nCopies(recordIndexes.size(), "?"));
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT " + columns + " FROM " + MEDIA_TABLE
+                     + " WHERE record_index IN (" + placeholders + ") ORDER BY record_index, media_id")) {
+            int i = 1;
+            for (int recordIndex : recordIndexes) {
+                stmt.setInt(i++, recordIndex);
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                MediaItem item = mapMediaItem(rs);
+                if (includeThumbnails) {
+                    item.setEncryptedThumbnail(rs.getBytes("encrypted_thumbnail"));
+                }
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public MediaItem getMediaItem(int recordIndex, int mediaId) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT " + MEDIA_ITEM_COLUMNS + " FROM " + MEDIA_TABLE
+                     + " WHERE media_id = ? AND record_index = ?")) {
+            stmt.setInt(1, mediaId);
+            stmt.setInt(2, recordIndex);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? mapMediaItem(rs) : null;
+        }
+    }
+
+    // Streams one attachment segment by segment; null if it is gone
+    @Override
+    public InputStream openMediaItem(MediaItem item) throws SQLException {
+        long length;
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT encrypted_length FROM " + MEDIA_TABLE + " WHERE media_id = ?")) {
+            stmt.setInt(1, item.getMediaId());
+            ResultSet rs = stmt.executeQuery();
+            length = rs.next() ? rs.getLong(1) : 0;
+        }
+        return length > 0 ? new MediaSegmentInputStream(item.getMediaId(), length) : null;
+    }
+
+    private static final String MEDIA_ITEM_COLUMNS = "media_id, record_index, kind, content_type, size";
+
+    private static MediaItem mapMediaItem(ResultSet rs) throws SQLException {
+        MediaItem item = new MediaItem();
+        item.setMediaId(rs.getInt("media_id"));
+        item.setRecordIndex(rs.getInt("record_index"));
+        item.setKind(rs.getString("kind"));
+        item.setContentType(rs.getString("content_type"));
+        item.setSize(rs.getLong("size"));
+        return item;
+    }
+
+    private static String mediaColumn(String kind) {
+        if ("image".equals(kind)) return "encrypted_images";
+        if ("video".equals(kind)) return "encrypted_videos";
+        throw new IllegalArgumentException("Unknown media kind: " + kind);
+    }
+
+    private PatientRecord mapSummary(ResultSet rs) throws SQLException {
         PatientRecord record = new PatientRecord();
         record.setRecordIndex(rs.getInt("record_index"));
         record.setPatientName(rs.getString("patient_name"));
@@ -136,14 +752,29 @@ public class MySQLHospitalRepository implements HospitalRepository {
         record.setDoctorName(rs.getString("doctor_name"));
         record.setNurseName(rs.getString("nurse_name"));
         record.setCheckInDate(rs.getTimestamp("check_in_date"));
-        
+        record.setImageSize(getSize(rs, "image_size"));
+        record.setVideoSize(getSize(rs, "video_size"));
+        record.clearDirty();
+        return record;
+    }
+
+    private static Long getSize(ResultSet rs, String column) throws SQLException {
+        long size = rs.getLong(column);
+        return rs.wasNull() ? null : size;
+    }
+
+    private void mapPayload(ResultSet rs, PatientRecord record) throws SQLException {
         record.setEncryptedSymptoms(rs.getBytes("encrypted_symptoms"));
         record.setEncryptedDiagnosis(rs.getBytes("encrypted_diagnosis"));
-        record.setEncryptedImages(rs.getBytes("encrypted_images"));
-        record.setEncryptedVideos(rs.getBytes("encrypted_videos"));
         record.setDoctorEncryptedAesKey(rs.getBytes("doctor_encrypted_aes_key"));
         record.setNurseEncryptedAesKey(rs.getBytes("nurse_encrypted_aes_key"));
-        
-        return record;
+        record.markClean(Field.ENCRYPTED_SYMPTOMS, Field.ENCRYPTED_DIAGNOSIS,
+                Field.DOCTOR_ENCRYPTED_AES_KEY, Field.NURSE_ENCRYPTED_AES_KEY);
+    }
+
+    private void mapMedia(ResultSet rs, PatientRecord record) throws SQLException {
+        record.setEncryptedImages(rs.getBytes("encrypted_images"));
+        record.setEncryptedVideos(rs.getBytes("encrypted_videos"));
+        record.markClean(Field.ENCRYPTED_IMAGES, Field.ENCRYPTED_VIDEOS);
     }
 }
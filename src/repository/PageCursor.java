@@ -0,0 +1,31 @@
+package repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Opaque keyset cursor: the (patient_name, record_index) of the last row on a page, base64url-encoded
+final class PageCursor {
+
+    final String patientName;
+    final int recordIndex;
+
+    private PageCursor(String patientName, int recordIndex) {
+        this.patientName = patientName;
+        this.recordIndex = recordIndex;
+    }
+
+    static String encode(String patientName, int recordIndex) {
+        String raw = recordIndex + ":" + (patientName == null ? "" : patientName);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new PageCursor(raw.substring(sep + 1), Integer.parseInt(raw.substring(0, sep)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
+    }
+}
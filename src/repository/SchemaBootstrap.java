@@ -0,0 +1,243 @@
+package repository;
+
+import util.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Creates the secondary indexes that SearchCriteria predicates are written against.
+// Each filter column leads its own index and is followed by (patient_name, record_index), the keyset
+// pagination order, so a filtered page is read in index order without a filesort. InnoDB appends the
+// primary key to every secondary index, which is why record_index is left implicit where it is last.
+// Also creates the blind-index token tables: Patient_Name_Tokens (name trigrams, substring name search)
+// and Patient_Term_Tokens (role-scoped symptom/diagnosis terms), the Patient_Media attachment table with its
+// Patient_Media_Segments ciphertext rows, and adds the plaintext media size columns.
+// Idempotent: tables and indexes that already exist (by name) are skipped. Needs CREATE and ALTER privileges.
+public class SchemaBootstrap {
+
+    static final String NAME_TOKENS_DDL = """
+            CREATE TABLE IF NOT EXISTS Patient_Name_Tokens (
+                token CHAR(32) CHARACTER SET ascii NOT NULL,
+                record_index INT NOT NULL,
+                PRIMARY KEY (token, record_index),
+                KEY idx_name_tokens_record (record_index)
+            )
+        """;
+
+    static final Map<String, String> INDEXES = new LinkedHashMap<>();
+
+    static {
+        INDEXES.put("idx_records_id_hash", "patient_id_hash, patient_name");
+        INDEXES.put("idx_records_name", "patient_name");
+        INDEXES.put("idx_records_dob_name", "patient_dob, patient_name");
+        INDEXES.put("idx_records_doctor_name", "doctor_name, patient_name");
+        INDEXES.put("idx_records_nurse_name", "nurse_name, patient_name");
+        INDEXES.put("idx_records_check_in", "check_in_date");
+    }
+
+    private SchemaBootstrap() {
+        // Prevent object creation (utility class)
+    }
+
+    static final String TERM_TOKENS_DDL = """
+            CREATE TABLE IF NOT EXISTS Patient_Term_Tokens (
+                token CHAR(32) CHARACTER SET ascii NOT NULL,
+                record_index INT NOT NULL,
+                PRIMARY KEY (token, record_index),
+                KEY idx_term_tokens_record (record_index)
+            )
+        """;
+
+    // Any number of images/videos per record, each encrypted under the record's data key; listed via
+    // (record_index, media_id) without touching the BLOBs. Images also carry an encrypted JPEG thumbnail.
+    static final String MEDIA_DDL = """
+            CREATE TABLE IF NOT EXISTS Patient_Media (
+                media_id INT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                record_index INT NOT NULL,
+                kind VARCHAR(8) CHARACTER SET ascii NOT NULL,
+                content_type VARCHAR(64) CHARACTER SET ascii NOT NULL,
+                size BIGINT NOT NULL,
+                encrypted_length BIGINT NOT NULL,
+                encrypted_thumbnail MEDIUMBLOB NULL,
+                KEY idx_media_record (record_index, media_id)
+            )
+        """;
+
+    // An attachment's ciphertext in 1 MiB rows (the last one shorter), so a chunk is read by primary key
+    // instead of SUBSTRING over one huge cell. Written with the Patient_Media row and never updated.
+    static final String MEDIA_SEGMENTS_DDL = """
+            CREATE TABLE IF NOT EXISTS Patient_Media_Segments (
+                media_id INT NOT NULL,
+                seq INT NOT NULL,
+                data MEDIUMBLOB NOT NULL,
+                PRIMARY KEY (media_id, seq)
+            )
+        """;
+
+    // Plaintext media sizes (null = no media), so search results can report them without touching the BLOBs
+    static final String[] MEDIA_SIZE_COLUMNS = {"image_size", "video_size"};
+
+    // Existing rows get their size from the stored ciphertext: chunked media is [header (15)] then chunks of
+    // at most chunk size (header bytes 5-8) plus a 16-byte tag each; legacy media is IV (12) + data + tag (16)
+    private static String sizeFromCiphertext(String column) {
+        String body = "(OCTET_LENGTH(" + column + ") - 15)";
+        String sealed = "(CONV(HEX(SUBSTRING(" + column + ", 5, 4)), 16, 10) + 16)";
+        return "CASE WHEN " + column + " IS NULL OR OCTET_LENGTH(" + column + ") = 0 THEN NULL"
+                + " WHEN SUBSTRING(" + column + ", 1, 4) = 0x484D5301 THEN " + body + " - CEIL(" + body + " / " + sealed + ") * 16"
+                + " ELSE OCTET_LENGTH(" + column + ") - 28 END";
+    }
+
+    // Creates the token and media tables, media size columns and any missing indexes; returns the names of the indexes created by this call
+    public static List<String> ensureSchema() throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(NAME_TOKENS_DDL);
+            stmt.executeUpdate(TERM_TOKENS_DDL);
+            stmt.executeUpdate(MEDIA_DDL);
+            stmt.executeUpdate(MEDIA_SEGMENTS_DDL);
+            ensureMediaSizeColumns(conn);
+            ensureThumbnailColumn(conn);
+            migrateMediaToSegments(conn);
+        }
+        return ensureIndexes();
+    }
+
+    // Run after a successful login by the console and the web server: searches read Patient_Media and the media
+    // size columns, so a database that never ran SchemaSetup is brought up to date on first use. A login
+    // without CREATE/ALTER privileges only gets a warning; it works fine on a database that is already current.
+    public static synchronized void ensureSchemaAfterLogin() {
+        try {
+            ensureSchema();
+        } catch (SQLException e) {
+            System.out.println("⚠️ Schema not updated (" + e.getMessage() + "); run SchemaSetup with CREATE and ALTER privileges");
+        }
+    }
+
+    // Patient_Media tables created before thumbnails; older attachments simply have none
+    private static void ensureThumbnailColumn(Connection conn) throws SQLException {
+        if (existingColumns(conn, "Patient_Media").contains("encrypted_thumbnail")) return;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE Patient_Media ADD COLUMN encrypted_thumbnail MEDIUMBLOB NULL");
+            System.out.println("🗂️ Added column encrypted_thumbnail to Patient_Media");
+        }
+    }
+
+    // Patient_Media tables from before segments hold each ciphertext in encrypted_data. Every attachment is
+    // copied into segment rows and gets its encrypted_length in its own transaction, so an interrupted run
+    // resumes where it stopped; the column is dropped once all of them are copied.
+    private static void migrateMediaToSegments(Connection conn) throws SQLException {
+        List<String> existing = existingColumns(conn, "Patient_Media");
+        if (!existing.contains("encrypted_data")) return;
+        try (Statement stmt = conn.createStatement()) {
+            if (!existing.contains("encrypted_length")) {
+                stmt.executeUpdate("ALTER TABLE Patient_Media ADD COLUMN encrypted_length BIGINT NULL AFTER size");
+            }
+        }
+
+        Map<Integer, Long> pending = new LinkedHashMap<>();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(
+                    "SELECT media_id, OCTET_LENGTH(encrypted_data) FROM Patient_Media WHERE encrypted_length IS NULL");
+            while (rs.next()) {
+                pending.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+
+        int segmentSize = MediaSegmentInputStream.SEGMENT_SIZE;
+        conn.setAutoCommit(false);
+        try (PreparedStatement copy = conn.prepareStatement(
+                "INSERT INTO Patient_Media_Segments (media_id, seq, data)"
+                        + " SELECT media_id, ?, SUBSTRING(encrypted_data, ?, ?) FROM Patient_Media WHERE media_id = ?");
+             PreparedStatement done = conn.prepareStatement(
+                     "UPDATE Patient_Media SET encrypted_length = ? WHERE media_id = ?")) {
+            for (Map.Entry<Integer, Long> media : pending.entrySet()) {
+                long length = media.getValue();
+                for (int seq = 0; (long) seq * segmentSize < length; seq++) {
+                    copy.setInt(1, seq);
+                    copy.setLong(2, (long) seq * segmentSize + 1); // SUBSTRING is 1-based
+                    copy.setInt(3, segmentSize);
+                    copy.setInt(4, media.getKey());
+                    copy.executeUpdate();
+                }
+                done.setLong(1, length);
+                done.setInt(2, media.getKey());
+                done.executeUpdate();
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE Patient_Media DROP COLUMN encrypted_data, MODIFY encrypted_length BIGINT NOT NULL");
+        }
+        System.out.println("🗂️ Moved " + pending.size() + " attachments into Patient_Media_Segments");
+    }
+
+    private static void ensureMediaSizeColumns(Connection conn) throws SQLException {
+        List<String> existing = existingColumns(conn, "Hospital_Records");
+        try (Statement stmt = conn.createStatement()) {
+            for (String column : MEDIA_SIZE_COLUMNS) {
+                if (existing.contains(column)) continue;
+                String media = "image_size".equals(column) ? "encrypted_images" : "encrypted_videos";
+                stmt.executeUpdate("ALTER TABLE Hospital_Records ADD COLUMN " + column + " BIGINT NULL");
+                int filled = stmt.executeUpdate("UPDATE Hospital_Records SET " + column + " = " + sizeFromCiphertext(media));
+                System.out.println("🗂️ Added column " + column + " (" + filled + " rows filled)");
+            }
+        }
+    }
+
+    // Returns the names of the indexes that were created by this call
+    public static List<String> ensureIndexes() throws SQLException {
+        List<String> created = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection()) {
+            List<String> existing = existingIndexes(conn);
+            try (Statement stmt = conn.createStatement()) {
+                for (Map.Entry<String, String> index : INDEXES.entrySet()) {
+                    if (existing.contains(index.getKey())) continue;
+                    stmt.executeUpdate("CREATE INDEX " + index.getKey() + " ON Hospital_Records (" + index.getValue() + ")");
+                    created.add(index.getKey());
+                    System.out.println("🗂️ Created index " + index.getKey() + " (" + index.getValue() + ")");
+                }
+            }
+        }
+        return created;
+    }
+
+    private static List<String> existingColumns(Connection conn, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT column_name FROM information_schema.columns"
+                        + " WHERE table_schema = DATABASE() AND table_name = ?")) {
+            stmt.setString(1, table);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                columns.add(rs.getString(1).toLowerCase());
+            }
+        }
+        return columns;
+    }
+
+    private static List<String> existingIndexes(Connection conn) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT DISTINCT index_name FROM information_schema.statistics"
+                        + " WHERE table_schema = DATABASE() AND table_name = 'Hospital_Records'")) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+}
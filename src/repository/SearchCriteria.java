@@ -0,0 +1,244 @@
+package repository;
+
+import util.BlindIndex;
+import util.Hashing;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Structured patient search. Every filter compiles to a sargable predicate (equality, BETWEEN, or a
+// prefix LIKE) on a plain column, so MySQL can answer it from the indexes created by SchemaBootstrap
+// instead of scanning the BLOB-heavy Hospital_Records table. Filters that are set are ANDed together.
+public class SearchCriteria {
+
+    static final String NAME_DOMAIN = "name";
+
+    private String patientId;
+    private String namePrefix;
+    private String nameContains;
+    private LocalDate dobFrom;
+    private LocalDate dobTo;
+    private String doctorName;
+    private String nurseName;
+    private LocalDateTime checkInFrom;
+    private LocalDateTime checkInTo;
+    private Set<String> termTokens;
+
+    public SearchCriteria patientId(String patientId) {
+        this.patientId = patientId;
+        return this;
+    }
+
+    public SearchCriteria namePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+        return this;
+    }
+
+    // Substring match, answered from the name token table when a blind index key is configured
+    public SearchCriteria nameContains(String nameContains) {
+        this.nameContains = nameContains;
+        return this;
+    }
+
+    public SearchCriteria dob(LocalDate dob) {
+        return dobBetween(dob, dob);
+    }
+
+    public SearchCriteria dobYear(int year) {
+        return dobBetween(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+    }
+
+    public SearchCriteria dobMonth(YearMonth month) {
+        return dobBetween(month.atDay(1), month.atEndOfMonth());
+    }
+
+    public SearchCriteria dobBetween(LocalDate from, LocalDate to) {
+        this.dobFrom = from;
+        this.dobTo = to;
+        return this;
+    }
+
+    public SearchCriteria doctorName(String doctorName) {
+        this.doctorName = doctorName;
+        return this;
+    }
+
+    public SearchCriteria nurseName(String nurseName) {
+        this.nurseName = nurseName;
+        return this;
+    }
+
+    // Either bound may be null for an open-ended range
+    public SearchCriteria checkInBetween(LocalDateTime from, LocalDateTime to) {
+        this.checkInFrom = from;
+        this.checkInTo = to;
+        return this;
+    }
+
+    // Blind-index tokens of symptom/diagnosis terms (see service.TermIndex); records must carry all of them
+    public SearchCriteria termTokens(Set<String> termTokens) {
+        this.termTokens = termTokens;
+        return this;
+    }
+
+    // Maps the classic (query, type) search onto criteria: "name" becomes a substring match, "dob"
+    // accepts a year (2000), a month (2000-04) or a full date (2000-04-17), "doctor"/"nurse" match exactly
+    public static SearchCriteria of(String query, String type) {
+        if (query == null || query.isEmpty()) {
+            throw new IllegalArgumentException("Search query is required");
+        }
+        SearchCriteria criteria = new SearchCriteria();
+        if ("id".equals(type)) {
+            return criteria.patientId(query);
+        } else if ("name".equals(type)) {
+            return criteria.nameContains(query);
+        } else if ("dob".equals(type)) {
+            return criteria.dobPattern(query);
+        } else if ("doctor".equals(type)) {
+            return criteria.doctorName(query);
+        } else if ("nurse".equals(type)) {
+            return criteria.nurseName(query);
+        }
+        throw new IllegalArgumentException("Unknown search type: " + type);
+    }
+
+    // Builds criteria from request parameters: id, name (prefix), nameContains, dob, doctor, nurse, checkInFrom, checkInTo
+    public static SearchCriteria fromParams(Map<String, String> params) {
+        SearchCriteria criteria = new SearchCriteria();
+        if (notEmpty(params.get("id"))) criteria.patientId(params.get("id"));
+        if (notEmpty(params.get("name"))) criteria.namePrefix(params.get("name"));
+        if (notEmpty(params.get("nameContains"))) criteria.nameContains(params.get("nameContains"));
+        if (notEmpty(params.get("dob"))) criteria.dobPattern(params.get("dob"));
+        if (notEmpty(params.get("doctor"))) criteria.doctorName(params.get("doctor"));
+        if (notEmpty(params.get("nurse"))) criteria.nurseName(params.get("nurse"));
+        LocalDateTime from = notEmpty(params.get("checkInFrom")) ? parseDateTime(params.get("checkInFrom"), false) : null;
+        LocalDateTime to = notEmpty(params.get("checkInTo")) ? parseDateTime(params.get("checkInTo"), true) : null;
+        if (from != null || to != null) criteria.checkInBetween(from, to);
+        if (criteria.isEmpty()) {
+            throw new IllegalArgumentException("At least one search filter is required");
+        }
+        return criteria;
+    }
+
+    private SearchCriteria dobPattern(String value) {
+        String v = value.trim();
+        try {
+            if (v.matches("\\d{4}")) {
+                return dobYear(Integer.parseInt(v));
+            } else if (v.matches("\\d{4}-\\d{1,2}")) {
+                String[] parts = v.split("-");
+                return dobMonth(YearMonth.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+            }
+            return dob(LocalDate.parse(v));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid date of birth: " + value + " (use YYYY, YYYY-MM or YYYY-MM-DD)");
+        }
+    }
+
+    // Accepts "YYYY-MM-DD" (start or end of that day) or "YYYY-MM-DD HH:MM[:SS]"
+    private static LocalDateTime parseDateTime(String value, boolean endOfDay) {
+        String v = value.trim();
+        try {
+            if (v.length() == 10) {
+                LocalDate day = LocalDate.parse(v);
+                return endOfDay ? day.atTime(23, 59, 59, 999_999_999) : day.atStartOfDay();
+            }
+            return LocalDateTime.parse(v.replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid check-in date: " + value);
+        }
+    }
+
+    private static boolean notEmpty(String s) {
+        return s != null && !s.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return patientId == null && namePrefix == null && nameContains == null && dobFrom == null && doctorName == null
+                && nurseName == null && checkInFrom == null && checkInTo == null
+                && (termTokens == null || termTokens.isEmpty());
+    }
+
+    // WHERE fragment for these criteria; its parameters are appended to params.
+    // nameIndex may be null when no index key is configured.
+    String toSql(List<Object> params, BlindIndex nameIndex) {
+        List<String> predicates = new ArrayList<>();
+        if (patientId != null) {
+            // ID is hashed, so we must search for the exact hash
+            predicates.add("patient_id_hash = ?");
+            params.add(Hashing.sha256(patientId));
+        }
+        if (namePrefix != null) {
+            // Prefix only: a leading wildcard would defeat the index
+            predicates.add("patient_name LIKE ?");
+            params.add(escapeLike(namePrefix) + "%");
+        }
+        if (nameContains != null) {
+            Set<String> tokens = nameIndex == null ? Set.of() : nameIndex.ngramTokens(NAME_DOMAIN, nameContains);
+            if (!tokens.isEmpty()) {
+                // Candidates must carry every trigram of the query (indexed equality lookups on the token table);
+                // the LIKE then only verifies those few rows
+                predicates.add(allTokens("Patient_Name_Tokens", tokens, params));
+                predicates.add("patient_name LIKE ?");
+                params.add("%" + escapeLike(nameContains) + "%");
+            } else {
+                // No index key configured, or a query too short for a trigram: plain substring scan, so the
+                // results mean the same thing whatever the query length
+                predicates.add("patient_name LIKE ?");
+                params.add("%" + escapeLike(nameContains) + "%");
+            }
+        }
+        if (dobFrom != null) {
+            if (dobFrom.equals(dobTo)) {
+                predicates.add("patient_dob = ?");
+                params.add(Date.valueOf(dobFrom));
+            } else {
+                predicates.add("patient_dob BETWEEN ? AND ?");
+                params.add(Date.valueOf(dobFrom));
+                params.add(Date.valueOf(dobTo));
+            }
+        }
+        if (termTokens != null && !termTokens.isEmpty()) {
+            predicates.add(allTokens("Patient_Term_Tokens", termTokens, params));
+        }
+        if (doctorName != null) {
+            predicates.add("doctor_name = ?");
+            params.add(doctorName);
+        }
+        if (nurseName != null) {
+            predicates.add("nurse_name = ?");
+            params.add(nurseName);
+        }
+        if (checkInFrom != null) {
+            predicates.add("check_in_date >= ?");
+            params.add(Timestamp.valueOf(checkInFrom));
+        }
+        if (checkInTo != null) {
+            predicates.add("check_in_date <= ?");
+            params.add(Timestamp.valueOf(checkInTo));
+        }
+        return predicates.isEmpty() ? "TRUE" : String.join(" AND ", predicates);
+    }
+
+    // Records that have every one of the tokens in the given token table (primary key lookups per token)
+    private static String allTokens(String table, Set<String> tokens, List<Object> params) {
+        params.addAll(tokens);
+        return "record_index IN (SELECT record_index FROM " + table + " WHERE token IN ("
+                + String.join(", ", Collections.nCopies(tokens.size(), "?"))
+                + ") GROUP BY record_index HAVING COUNT(*) = " + tokens.size() + ")";
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
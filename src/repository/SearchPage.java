@@ -0,0 +1,26 @@
+package repository;
+
+import model.PatientRecord;
+import java.util.List;
+
+// One page of a keyset-paginated search; pass nextCursor back to fetch the following page
+public class SearchPage {
+    private List<PatientRecord> records;
+    private final String nextCursor; // null on the last page
+
+    public SearchPage(List<PatientRecord> records, String nextCursor) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<PatientRecord> getRecords() { return records; }
+
+    // Hands the list over to a caller that consumes it (e.g. drops rows once written); the page keeps none
+    public List<PatientRecord> takeRecords() {
+        List<PatientRecord> taken = records;
+        records = List.of();
+        return taken;
+    }
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != null; }
+}
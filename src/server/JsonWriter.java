@@ -0,0 +1,216 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Map;
+
+// Writes JSON straight to an output stream (e.g. a chunked response body) instead of building it in memory.
+// Strings are escaped per RFC 8259; binary values are base64-encoded on the fly, so memory use doesn't grow
+// with the size of the document. Commas are tracked per nesting level.
+public class JsonWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final Writer writer;
+    // One entry per open object/array: true once it has at least one element
+    private final Deque<Boolean> hasElements = new ArrayDeque<>();
+    private boolean afterName;
+
+    public JsonWriter(OutputStream out) {
+        this.out = out;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        separator();
+        writer.write('{');
+        hasElements.push(false);
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        hasElements.pop();
+        writer.write('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        separator();
+        writer.write('[');
+        hasElements.push(false);
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        hasElements.pop();
+        writer.write(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        writeString(name);
+        writer.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) return nullValue();
+        separator();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) return nullValue();
+        separator();
+        double d = value.doubleValue();
+        // NaN and infinities aren't valid JSON numbers
+        writer.write(Double.isNaN(d) || Double.isInfinite(d) ? "null" : value.toString());
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        writer.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separator();
+        writer.write("null");
+        return this;
+    }
+
+    // Strings, numbers, booleans, byte[] (as base64), maps and iterables; anything else via toString()
+    public JsonWriter value(Object value) throws IOException {
+        if (value == null) return nullValue();
+        if (value instanceof String) return value((String) value);
+        if (value instanceof Number) return value((Number) value);
+        if (value instanceof Boolean) return value(((Boolean) value).booleanValue());
+        if (value instanceof byte[]) return base64Value((byte[]) value);
+        if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(entry.getKey()));
+                value(entry.getValue());
+            }
+            return endObject();
+        }
+        if (value instanceof Iterable) {
+            beginArray();
+            for (Object element : (Iterable<?>) value) {
+                value(element);
+            }
+            return endArray();
+        }
+        return value(value.toString());
+    }
+
+    // Base64 string encoded while it is written; no intermediate String of the whole value
+    public JsonWriter base64Value(byte[] data) throws IOException {
+        if (data == null) return nullValue();
+        separator();
+        writer.write('"');
+        writer.flush();
+        try (OutputStream encoder = Base64.getEncoder().wrap(unclosable(out))) {
+            encoder.write(data);
+        }
+        writer.write('"');
+        return this;
+    }
+
+    // Same as base64Value(byte[]) but reads the data from a stream; the stream is not closed
+    public JsonWriter base64Value(InputStream data) throws IOException {
+        if (data == null) return nullValue();
+        separator();
+        writer.write('"');
+        writer.flush();
+        try (OutputStream encoder = Base64.getEncoder().wrap(unclosable(out))) {
+            data.transferTo(encoder);
+        }
+        writer.write('"');
+        return this;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    // Flushes and closes the underlying stream; for an HTTP exchange this ends the chunked response
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (!hasElements.isEmpty()) {
+            if (hasElements.peek()) {
+                writer.write(',');
+            } else {
+                hasElements.pop();
+                hasElements.push(true);
+            }
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String escape;
+            switch (c) {
+                case '"': escape = "\\\""; break;
+                case '\\': escape = "\\\\"; break;
+                case '\n': escape = "\\n"; break;
+                case '\r': escape = "\\r"; break;
+                case '\t': escape = "\\t"; break;
+                case '\b': escape = "\\b"; break;
+                case '\f': escape = "\\f"; break;
+                // U+2028/2029 are valid JSON but break JavaScript string literals
+                case '\u2028': escape = "\\u2028"; break;
+                case '\u2029': escape = "\\u2029"; break;
+                default:
+                    if (c >= 0x20) continue;
+                    escape = String.format("\\u%04x", (int) c);
+            }
+            writer.write(s, start, i - start);
+            writer.write(escape);
+            start = i + 1;
+        }
+        writer.write(s, start, s.length() - start);
+        writer.write('"');
+    }
+
+    // The base64 encoder must be closed to emit its padding, but that must not close the response
+    private static OutputStream unclosable(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+}
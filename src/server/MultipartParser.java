@@ -0,0 +1,301 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Incremental multipart/form-data parser (RFC 7578). The body is scanned for the boundary through one fixed
+// buffer: form fields are decoded into small buffers (at most maxFieldBytes each) and file parts are handed
+// to a FileHandler as a stream that ends at the part's boundary, so memory stays at a few buffers no matter
+// how large the upload is. maxPartBytes caps each file, maxTotalBytes the whole body.
+public class MultipartParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final int MAX_PARTS = 64;
+
+    // Receives each file part; whatever the handler leaves unread is skipped (and still counted against the limits)
+    @FunctionalInterface
+    public interface FileHandler {
+        void onFile(String name, String filename, String contentType, InputStream content) throws IOException;
+    }
+
+    // Thrown when a field, file or the whole body is larger than allowed; answer with 413
+    public static class LimitExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final long maxFieldBytes;
+    private final long maxPartBytes;
+    private final long maxTotalBytes;
+
+    public MultipartParser(long maxFieldBytes, long maxPartBytes, long maxTotalBytes) {
+        this.maxFieldBytes = maxFieldBytes;
+        this.maxPartBytes = maxPartBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    // The boundary parameter of a multipart Content-Type header, or null
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        String boundary = parameters(contentType).get("boundary");
+        // RFC 2046 limits boundaries to 70 characters
+        return boundary == null || boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+    }
+
+    // Returns the form fields; file parts go to the handler as they arrive
+    public Map<String, String> parse(InputStream body, String boundary, FileHandler files) throws IOException {
+        Scanner scanner = new Scanner(body, ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1));
+        Map<String, String> fields = new HashMap<>();
+
+        // Skip the preamble up to the first boundary
+        scanner.skipPart();
+        int parts = 0;
+        while (scanner.nextPart()) {
+            if (++parts > MAX_PARTS) {
+                throw new LimitExceededException("More than " + MAX_PARTS + " parts");
+            }
+            Map<String, String> headers = scanner.readHeaders();
+            Map<String, String> disposition = parameters(headers.getOrDefault("content-disposition", ""));
+            String name = disposition.get("name");
+            String filename = disposition.get("filename");
+
+            if (filename != null) {
+                LimitedPart content = new LimitedPart(scanner, maxPartBytes, "File part " + name);
+                if (!filename.isEmpty()) {
+                    files.onFile(name, filename, headers.get("content-type"), content);
+                }
+                content.skipRemaining();
+            } else if (name != null) {
+                LimitedPart content = new LimitedPart(scanner, maxFieldBytes, "Field " + name);
+                ByteArrayOutputStream value = new ByteArrayOutputStream();
+                content.transferTo(value);
+                fields.put(name, value.toString(StandardCharsets.UTF_8));
+            } else {
+                scanner.skipPart();
+            }
+        }
+        return fields;
+    }
+
+    // Splits "value; key=val; key2=\"quoted; val\"" into lower-case keys and unquoted values
+    static Map<String, String> parameters(String header) {
+        Map<String, String> params = new HashMap<>();
+        int i = header.indexOf(';');
+        while (i >= 0 && i < header.length()) {
+            int eq = header.indexOf('=', i + 1);
+            if (eq < 0) break;
+            String key = header.substring(i + 1, eq).trim().toLowerCase(Locale.ROOT);
+            StringBuilder value = new StringBuilder();
+            int j = eq + 1;
+            while (j < header.length() && header.charAt(j) == ' ') j++;
+            if (j < header.length() && header.charAt(j) == '"') {
+                for (j++; j < header.length() && header.charAt(j) != '"'; j++) {
+                    char c = header.charAt(j);
+                    if (c == '\\' && j + 1 < header.length()) c = header.charAt(++j);
+                    value.append(c);
+                }
+                j = header.indexOf(';', j);
+            } else {
+                int end = header.indexOf(';', j);
+                value.append(header, j, end < 0 ? header.length() : end);
+                j = end;
+            }
+            params.putIfAbsent(key, value.toString().trim());
+            i = j;
+        }
+        return params;
+    }
+
+    // Reads the body through one buffer and stops each part at the delimiter (CRLF "--" boundary).
+    // The body is treated as if it started with CRLF, so the first boundary needs no special case.
+    private final class Scanner {
+        private final InputStream in;
+        private final byte[] delimiter;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos;
+        private int limit;
+        private boolean eof;
+        private long total;
+        private boolean partDone;
+
+        Scanner(InputStream in, byte[] delimiter) {
+            this.in = in;
+            this.delimiter = delimiter;
+            buf[0] = '\r';
+            buf[1] = '\n';
+            limit = 2;
+        }
+
+        // Reads part content up to the next delimiter; -1 once the delimiter has been reached
+        int readPart(byte[] b, int off, int len) throws IOException {
+            if (partDone) return -1;
+            while (true) {
+                if (limit - pos < delimiter.length && !eof) {
+                    fill();
+                    continue;
+                }
+                int found = indexOfDelimiter();
+                if (found == pos) {
+                    pos += delimiter.length;
+                    partDone = true;
+                    return -1;
+                }
+                // Without a match, the last delimiter.length - 1 bytes could still be the start of one
+                int safe = found >= 0 ? found - pos : limit - pos - (delimiter.length - 1);
+                if (safe <= 0) {
+                    if (eof) throw new IOException("Unexpected end of multipart body");
+                    fill();
+                    continue;
+                }
+                int n = Math.min(len, safe);
+                System.arraycopy(buf, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+        }
+
+        void skipPart() throws IOException {
+            byte[] scratch = new byte[4096];
+            while (readPart(scratch, 0, scratch.length) >= 0) {
+                // discard
+            }
+        }
+
+        // After a delimiter: "--" ends the body, CRLF (optionally after padding) starts another part
+        boolean nextPart() throws IOException {
+            if (!partDone) skipPart();
+            partDone = false;
+            int first = readByte();
+            int second = readByte();
+            if (first == '-' && second == '-') return false;
+            while (first == ' ' || first == '\t') {
+                first = second;
+                second = readByte();
+            }
+            if (first != '\r' || second != '\n') {
+                throw new IOException("Malformed multipart boundary");
+            }
+            return true;
+        }
+
+        // Header lines up to the blank line; names lower-cased
+        Map<String, String> readHeaders() throws IOException {
+            Map<String, String> headers = new HashMap<>();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int size = 0;
+            while (true) {
+                int c = readByte();
+                if (++size > MAX_HEADER_BYTES) {
+                    throw new LimitExceededException("Part headers larger than " + MAX_HEADER_BYTES + " bytes");
+                }
+                if (c != '\n') {
+                    if (c != '\r') line.write(c);
+                    continue;
+                }
+                if (line.size() == 0) return headers;
+                String header = line.toString(StandardCharsets.UTF_8);
+                int colon = header.indexOf(':');
+                if (colon > 0) {
+                    headers.put(header.substring(0, colon).trim().toLowerCase(Locale.ROOT), header.substring(colon + 1).trim());
+                }
+                line.reset();
+            }
+        }
+
+        private int readByte() throws IOException {
+            if (pos == limit) {
+                fill();
+                if (pos == limit) throw new IOException("Unexpected end of multipart body");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        private void fill() throws IOException {
+            if (eof) return;
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                eof = true;
+                return;
+            }
+            limit += n;
+            total += n;
+            if (total > maxTotalBytes) {
+                throw new LimitExceededException("Upload larger than " + maxTotalBytes + " bytes");
+            }
+        }
+
+        private int indexOfDelimiter() {
+            int last = limit - delimiter.length;
+            outer:
+            for (int i = pos; i <= last; i++) {
+                if (buf[i] != delimiter[0]) continue;
+                for (int j = 1; j < delimiter.length; j++) {
+                    if (buf[i + j] != delimiter[j]) continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+
+    // One part's content as a stream, failing once it exceeds its limit
+    private static final class LimitedPart extends InputStream {
+        private final Scanner scanner;
+        private final long max;
+        private final String what;
+        private long read;
+
+        LimitedPart(Scanner scanner, long max, String what) {
+            this.scanner = scanner;
+            this.max = max;
+            this.what = what;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            int n = scanner.readPart(b, off, len);
+            if (n > 0) {
+                read += n;
+                if (read > max) {
+                    throw new LimitExceededException(what + " larger than " + max + " bytes");
+                }
+            }
+            return n;
+        }
+
+        void skipRemaining() throws IOException {
+            byte[] scratch = new byte[4096];
+            while (read(scratch, 0, scratch.length) >= 0) {
+                // discard, still counting towards the limit
+            }
+        }
+
+        @Override
+        public void close() {
+            // The rest of the part is skipped by the parser; closing must not touch the request body
+        }
+    }
+}
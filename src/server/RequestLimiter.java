@@ -0,0 +1,158 @@
+package server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounds how many requests run at once. Up to maxConcurrent requests run; up to maxQueue more wait
+// (at most queueTimeoutMillis) for a slot; anything beyond that is answered 503 with Retry-After straight
+// away, so a burst degrades into fast rejections instead of unbounded latency for everyone.
+// With a bounded executor, overflowHandler() makes sure requests the executor has no room for get the same 503.
+public class RequestLimiter extends Filter {
+
+    // Set while an exchange the executor rejected is being run: the filter answers it 503 without running it
+    private static final ThreadLocal<Boolean> OVERFLOW = ThreadLocal.withInitial(() -> false);
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long queueTimeoutMillis;
+
+    // Metrics
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedTimeout = new AtomicLong();
+    private final AtomicLong rejectedOverflow = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    public RequestLimiter(int maxConcurrent, int maxQueue, long queueTimeoutMillis) {
+        if (maxConcurrent <= 0 || maxQueue < 0) {
+            throw new IllegalArgumentException("Invalid limits: concurrent=" + maxConcurrent + " queue=" + maxQueue);
+        }
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (OVERFLOW.get()) {
+            rejectedOverflow.incrementAndGet();
+            reject(exchange);
+            return;
+        }
+        // The timed form honours the semaphore's fairness: a new arrival can't take a permit from a queued request
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            if (queued.incrementAndGet() > maxQueue) {
+                queued.decrementAndGet();
+                rejectedQueueFull.incrementAndGet();
+                reject(exchange);
+                return;
+            }
+            long waitStart = System.nanoTime();
+            try {
+                acquired = permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            } finally {
+                queued.decrementAndGet();
+                totalQueueNanos.addAndGet(System.nanoTime() - waitStart);
+            }
+            if (!acquired) {
+                rejectedTimeout.incrementAndGet();
+                reject(exchange);
+                return;
+            }
+        }
+
+        accepted.incrementAndGet();
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            totalNanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    // For a bounded executor: the server has already accepted the connection and must parse the request
+    // before it can answer, so a rejected exchange is run on a few separate threads with the overflow flag
+    // set (or, when those are saturated too, on the submitting thread) and gets an immediate 503.
+    public RejectedExecutionHandler overflowHandler(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor rejecter = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+                    Thread thread = new Thread(r, "http-reject-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, pool) -> task.run());
+        return (task, pool) -> rejecter.execute(() -> {
+            OVERFLOW.set(true);
+            try {
+                task.run();
+            } finally {
+                OVERFLOW.set(false);
+            }
+        });
+    }
+
+    private static void reject(HttpExchange exchange) throws IOException {
+        byte[] body = "Server busy, please retry".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    @Override
+    public String description() {
+        return "Concurrency limiter (max " + maxConcurrent + " running, " + maxQueue + " queued)";
+    }
+
+    // Metrics
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public int getMaxQueue() { return maxQueue; }
+    public int getInFlight() { return inFlight.get(); }
+    public int getQueued() { return queued.get(); }
+    public long getAccepted() { return accepted.get(); }
+    public long getRejected() { return rejectedQueueFull.get() + rejectedTimeout.get() + rejectedOverflow.get(); }
+    public long getRejectedQueueFull() { return rejectedQueueFull.get(); }
+    public long getRejectedTimeout() { return rejectedTimeout.get(); }
+    public long getRejectedOverflow() { return rejectedOverflow.get(); }
+    public long getMaxLatencyMillis() { return TimeUnit.NANOSECONDS.toMillis(maxNanos.get()); }
+
+    public double getAverageLatencyMillis() {
+        long count = accepted.get() - inFlight.get();
+        return count <= 0 ? 0.0 : totalNanos.get() / 1_000_000.0 / count;
+    }
+
+    public double getAverageQueueMillis() {
+        long count = accepted.get() + getRejected();
+        return count == 0 ? 0.0 : totalQueueNanos.get() / 1_000_000.0 / count;
+    }
+}
@@ -6,33 +6,111 @@ import com.sun.net.httpserver.HttpsParameters;
 import com.sun.net.httpserver.HttpsExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.Headers;
+import model.DecryptedRecord;
+import model.MediaItem;
 import model.PatientRecord;
 import repository.HospitalRepository;
 import repository.MySQLHospitalRepository;
+import repository.SchemaBootstrap;
+import repository.SearchCriteria;
+import repository.SearchPage;
+import service.DataKeyCache;
+import service.KeyRing;
+import service.MediaInput;
+import service.MediaService;
 import service.PatientService;
+import service.TermIndex;
+import util.ConnectionPool;
 import util.DBConnection;
 
 import javax.net.ssl.*;
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.*;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.sql.Date;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class SimpleWebServer {
 
     private static final int PORT = 8000;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int DATA_KEY_CACHE_SIZE = 1024;
+    private static final Duration DATA_KEY_CACHE_TTL = Duration.ofMinutes(5);
     private static final HospitalRepository repository = new MySQLHospitalRepository();
-    private static final PatientService patientService = new PatientService();
+    // Web UI files, kept in memory with a gzip copy; re-checked on disk at most once a second
+    private static final StaticAssetCache staticAssets = new StaticAssetCache(Paths.get("src/web"), 1000);
+    private static final PatientService patientService =
+            new PatientService(new DataKeyCache(DATA_KEY_CACHE_SIZE, DATA_KEY_CACHE_TTL));
+
+    // How requests are executed and how many may run or wait at once
+    public static class Config {
+        public String executor = "platform"; // or "virtual" (JDK 21+, else falls back to platform)
+        public int maxConcurrent = Runtime.getRuntime().availableProcessors() * 4;
+        public int maxQueue = 100;
+        public long queueTimeoutMillis = 5_000;
+        // Multipart uploads: per file part and whole request body
+        public long maxUploadPartBytes = 1L << 30;
+        public long maxUploadBytes = (1L << 30) + (1L << 20);
+
+        // -Dserver.executor, -Dserver.maxConcurrent, -Dserver.maxQueue, -Dserver.queueTimeoutMillis,
+        // -Dserver.maxUploadPartBytes, -Dserver.maxUploadBytes
+        public static Config fromSystemProperties() {
+            Config config = new Config();
+            config.executor = System.getProperty("server.executor", config.executor);
+            config.maxConcurrent = Integer.getInteger("server.maxConcurrent", config.maxConcurrent);
+            config.maxQueue = Integer.getInteger("server.maxQueue", config.maxQueue);
+            config.queueTimeoutMillis = Long.getLong("server.queueTimeoutMillis", config.queueTimeoutMillis);
+            config.maxUploadPartBytes = Long.getLong("server.maxUploadPartBytes", config.maxUploadPartBytes);
+            config.maxUploadBytes = Long.getLong("server.maxUploadBytes", config.maxUploadBytes);
+            return config;
+        }
+    }
+
+    private final Config config;
+    private final RequestLimiter limiter;
+    private String executorMode;
+
+    public SimpleWebServer() {
+        this(Config.fromSystemProperties());
+    }
+
+    public SimpleWebServer(Config config) {
+        this.config = config;
+        this.limiter = new RequestLimiter(config.maxConcurrent, config.maxQueue, config.queueTimeoutMillis);
+        // One connection per running request; media streams only borrow one per chunk
+        DBConnection.setPoolSize(config.maxConcurrent);
+    }
 
     public void start() throws IOException, NoSuchAlgorithmException, KeyStoreException, CertificateException, UnrecoverableKeyException, KeyManagementException {
         // Load Keystore
@@ -69,20 +147,108 @@ public class SimpleWebServer {
         });
 
         // Serve HTML
-        server.createContext("/", new StaticHandler());
+        server.createContext("/", new StaticHandler()).getFilters().add(limiter);
 
         // API Endpoints
-        server.createContext("/api/login", new LoginHandler());
-        server.createContext("/api/insert", new InsertHandler());
-        server.createContext("/api/search", new SearchHandler());
-        server.createContext("/api/update", new UpdateHandler());
+        server.createContext("/api/login", new LoginHandler()).getFilters().add(limiter);
+        server.createContext("/api/insert", new InsertHandler(config.maxUploadPartBytes, config.maxUploadBytes)).getFilters().add(limiter);
+        server.createContext("/api/search", new SearchHandler()).getFilters().add(limiter);
+        server.createContext("/api/update", new UpdateHandler()).getFilters().add(limiter);
+        server.createContext("/api/media/", new MediaHandler()).getFilters().add(limiter);
+        // Not limited, so it still answers while the server is saturated
+        server.createContext("/api/metrics", new MetricsHandler());
+
+        // Zeroize expired data keys even when nobody reads them again
+        ScheduledExecutorService housekeeping = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "data-key-cache-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeping.scheduleAtFixedRate(patientService.getDataKeyCache()::purgeExpired, 1, 1, TimeUnit.MINUTES);
 
-        server.setExecutor(null); // creates a default executor
-        System.out.println("Server started on https://localhost:" + PORT);
+        server.setExecutor(createExecutor());
+        System.out.println("Server started on https://localhost:" + PORT + " (" + executorMode + " threads, "
+                + config.maxConcurrent + " concurrent, " + config.maxQueue + " queued)");
         server.start();
     }
 
+    private ExecutorService createExecutor() {
+        if ("virtual".equalsIgnoreCase(config.executor)) {
+            try {
+                // Looked up reflectively so the server still builds and runs on JDKs before 21
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                executorMode = "virtual";
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("⚠️ Virtual threads need JDK 21+; using a platform thread pool instead.");
+            }
+        }
+        // Every running or queued request holds a thread; the extra per-core threads keep rejections prompt.
+        // Only a short hand-off queue in front of them: anything more is answered 503 by the limiter's
+        // overflow handler instead of waiting, unseen and without a timeout, inside the executor.
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = config.maxConcurrent + config.maxQueue + cores;
+        executorMode = "platform";
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(cores), r -> {
+            Thread thread = new Thread(r, "http-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, limiter.overflowHandler(cores));
+    }
+
+    class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange t) throws IOException {
+            Map<String, Object> requests = new LinkedHashMap<>();
+            requests.put("executor", executorMode);
+            requests.put("maxConcurrent", limiter.getMaxConcurrent());
+            requests.put("maxQueue", limiter.getMaxQueue());
+            requests.put("inFlight", limiter.getInFlight());
+            requests.put("queued", limiter.getQueued());
+            requests.put("accepted", limiter.getAccepted());
+            requests.put("rejected", limiter.getRejected());
+            requests.put("rejectedQueueFull", limiter.getRejectedQueueFull());
+            requests.put("rejectedTimeout", limiter.getRejectedTimeout());
+            requests.put("rejectedOverflow", limiter.getRejectedOverflow());
+            requests.put("avgLatencyMs", limiter.getAverageLatencyMillis());
+            requests.put("maxLatencyMs", limiter.getMaxLatencyMillis());
+            requests.put("avgQueueMs", limiter.getAverageQueueMillis());
+
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("requests", requests);
+
+            DataKeyCache cache = patientService.getDataKeyCache();
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("hits", cache.getHits());
+            keys.put("misses", cache.getMisses());
+            keys.put("hitRate", cache.getHitRate());
+            metrics.put("dataKeyCache", keys);
+
+            try {
+                ConnectionPool pool = DBConnection.getDataSource();
+                Map<String, Object> db = new LinkedHashMap<>();
+                db.put("active", pool.getActiveConnections());
+                db.put("idle", pool.getIdleConnections());
+                db.put("waiting", pool.getThreadsAwaitingConnection());
+                db.put("timeouts", pool.getAcquisitionTimeouts());
+                db.put("avgWaitMs", pool.getAverageWaitMillis());
+                metrics.put("connectionPool", db);
+            } catch (SQLException e) {
+                // Nobody has logged in yet, so there is no pool to report on
+            }
+
+            t.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            t.sendResponseHeaders(200, 0);
+            try (JsonWriter json = new JsonWriter(t.getResponseBody())) {
+                json.value(metrics);
+            }
+        }
+    }
+
     static class StaticHandler implements HttpHandler {
+        private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
         @Override
         public void handle(HttpExchange t) throws IOException {
             String path = t.getRequestURI().getPath();
@@ -94,15 +260,63 @@ public class SimpleWebServer {
                 return;
             }
 
-            try {
-                byte[] content = Files.readAllBytes(Paths.get("src/web" + path));
-                t.sendResponseHeaders(200, content.length);
-                OutputStream os = t.getResponseBody();
-                os.write(content);
-                os.close();
-            } catch (IOException e) {
+            StaticAssetCache.Asset asset = staticAssets.get(path);
+            if (asset == null) {
                 sendResponse(t, 404, "File Not Found");
+                return;
+            }
+
+            String acceptEncoding = t.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = asset.gzipped != null && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+            String etag = gzip ? asset.gzipEtag() : asset.etag;
+
+            Headers headers = t.getResponseHeaders();
+            headers.set("ETag", etag);
+            headers.set("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(asset.lastModified)));
+            headers.set("Cache-Control", "no-cache"); // always revalidate, so edits show up on the next load
+            headers.set("Vary", "Accept-Encoding");
+
+            if (notModified(t.getRequestHeaders(), asset, etag)) {
+                t.sendResponseHeaders(304, -1);
+                t.close();
+                return;
             }
+
+            byte[] body = gzip ? asset.gzipped : asset.content;
+            headers.set("Content-Type", asset.contentType);
+            if (gzip) headers.set("Content-Encoding", "gzip");
+            if ("HEAD".equals(t.getRequestMethod())) {
+                t.sendResponseHeaders(200, -1);
+                t.close();
+                return;
+            }
+            t.sendResponseHeaders(200, body.length);
+            try (OutputStream os = t.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        // If-None-Match wins over If-Modified-Since when both are sent
+        private static boolean notModified(Headers request, StaticAssetCache.Asset asset, String etag) {
+            String ifNoneMatch = request.getFirst("If-None-Match");
+            if (ifNoneMatch != null) {
+                for (String candidate : ifNoneMatch.split(",")) {
+                    String tag = candidate.trim();
+                    if (tag.startsWith("W/")) tag = tag.substring(2);
+                    if (tag.equals("*") || tag.equals(etag)) return true;
+                }
+                return false;
+            }
+            String ifModifiedSince = request.getFirst("If-Modified-Since");
+            if (ifModifiedSince != null) {
+                try {
+                    long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                    return asset.lastModified <= since;
+                } catch (DateTimeParseException e) {
+                    return false;
+                }
+            }
+            return false;
         }
     }
 
@@ -115,6 +329,7 @@ public class SimpleWebServer {
                     DBConnection.setCredentials(params.get("user"), params.get("pass"));
                     // Test connection
                     DBConnection.getConnection().close();
+                    SchemaBootstrap.ensureSchemaAfterLogin();
                     sendResponse(t, 200, "Login Successful");
                 } catch (Exception e) {
                     sendResponse(t, 401, "Login Failed: " + e.getMessage());
@@ -126,17 +341,37 @@ public class SimpleWebServer {
     }
 
     static class InsertHandler implements HttpHandler {
+        private static final long MAX_FIELD_BYTES = 64 * 1024;
+
+        private final long maxUploadBytes;
+        private final MultipartParser multipart;
+
+        InsertHandler(long maxUploadPartBytes, long maxUploadBytes) {
+            this.maxUploadBytes = maxUploadBytes;
+            this.multipart = new MultipartParser(MAX_FIELD_BYTES, maxUploadPartBytes, maxUploadBytes);
+        }
+
         @Override
         public void handle(HttpExchange t) throws IOException {
             if ("POST".equals(t.getRequestMethod())) {
+                // Uploads of this request only; removed again whatever happens
+                List<Path> uploads = new ArrayList<>();
+                List<MediaInput> inputs = new ArrayList<>();
                 try {
                     String contentType = t.getRequestHeaders().getFirst("Content-Type");
-                    Map<String, String> params = new HashMap<>();
-
-                    if (contentType != null && contentType.contains("multipart/form-data")) {
-                        // Handle Multipart
-                        String boundary = contentType.substring(contentType.indexOf("boundary=") + 9);
-                        parseMultipart(t.getRequestBody(), boundary, params);
+                    Map<String, String> params;
+
+                    String boundary = MultipartParser.boundaryOf(contentType);
+                    if (boundary != null) {
+                        // Refuse a declared oversize body before reading any of it
+                        String length = t.getRequestHeaders().getFirst("Content-Length");
+                        if (length != null && Long.parseLong(length.trim()) > maxUploadBytes) {
+                            sendResponse(t, 413, "Upload larger than " + maxUploadBytes + " bytes");
+                            return;
+                        }
+                        // Fields are decoded as they arrive, files streamed to temp files private to this request
+                        params = multipart.parse(t.getRequestBody(), boundary,
+                                (name, filename, type, content) -> inputs.add(saveUpload(filename, content, uploads)));
                     } else {
                         // Handle JSON
                         params = parseJsonBody(t.getRequestBody());
@@ -162,74 +397,42 @@ public class SimpleWebServer {
                     record.setDoctorName(params.get("doctorName"));
                     record.setNurseName(params.get("nurseName"));
 
-                    patientService.processEncryption(record, params.get("symptoms"), params.get("diagnosis"));
-                    repository.insert(record);
+                    // Staged ciphertext is removed once the repository has stored it (or failed to)
+                    MediaService.MediaResult media = patientService.processEncryption(record, params.get("symptoms"), params.get("diagnosis"), inputs);
+                    try {
+                        repository.insert(record);
+                    } finally {
+                        media.close();
+                    }
                     
                     sendResponse(t, 200, "Inserted");
+                } catch (MultipartParser.LimitExceededException e) {
+                    sendResponse(t, 413, e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    sendResponse(t, 400, e.getMessage()); // unsupported media type
                 } catch (Exception e) {
                     e.printStackTrace();
                     sendResponse(t, 500, "Error: " + e.getMessage());
-                }
-            }
-        }
-
-        private void parseMultipart(InputStream is, String boundary, Map<String, String> params) throws IOException {
-            // Ensure media directory exists
-            Files.createDirectories(Paths.get("media"));
-
-            // Read all bytes (simplistic approach for demo)
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            int nRead;
-            byte[] data = new byte[1024];
-            while ((nRead = is.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-            buffer.flush();
-            byte[] bodyBytes = buffer.toByteArray();
-
-            // Split by boundary
-            // Note: This is a very basic parser. Production code should use Apache Commons FileUpload.
-            String body = new String(bodyBytes, StandardCharsets.ISO_8859_1); // Use ISO-8859-1 to preserve byte values
-            String[] parts = body.split("--" + boundary);
-
-            for (String part : parts) {
-                if (part.contains("Content-Disposition: form-data;")) {
-                    String[] headersAndBody = part.split("\r\n\r\n", 2);
-                    if (headersAndBody.length < 2) continue;
-
-                    String headers = headersAndBody[0];
-                    String content = headersAndBody[1];
-                    // Remove trailing newlines/boundary markers from content
-                    if (content.endsWith("\r\n")) content = content.substring(0, content.length() - 2);
-
-                    String name = extractHeaderValue(headers, "name");
-                    String filename = extractHeaderValue(headers, "filename");
-
-                    if (filename != null) {
-                        // It's a file
-                        if (!filename.isEmpty()) {
-                            // Convert content back to bytes
-                            byte[] fileBytes = content.getBytes(StandardCharsets.ISO_8859_1);
-                            Files.write(Paths.get("media", filename), fileBytes);
-                            System.out.println("Saved uploaded file: " + filename);
+                } finally {
+                    for (Path upload : uploads) {
+                        try {
+                            Files.deleteIfExists(upload);
+                        } catch (IOException e) {
+                            System.out.println("Could not remove upload " + upload + ": " + e.getMessage());
                         }
-                    } else {
-                        // It's a field
-                        params.put(name, content);
                     }
                 }
             }
         }
 
-        private String extractHeaderValue(String headers, String key) {
-            for (String line : headers.split("\r\n")) {
-                if (line.contains(key + "=")) {
-                    int start = line.indexOf(key + "=\"") + key.length() + 2;
-                    int end = line.indexOf("\"", start);
-                    return line.substring(start, end);
-                }
-            }
-            return null;
+        // The client's file name only picks the media type (checked before anything is written); the bytes
+        // go to a fresh temp file, so concurrent uploads of the same name never see each other
+        private static MediaInput saveUpload(String filename, InputStream content, List<Path> uploads) throws IOException {
+            MediaInput.checkSupported(filename);
+            Path target = Files.createTempFile("upload-", ".part");
+            uploads.add(target);
+            Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+            return MediaInput.ofFile(target, filename);
         }
     }
 
@@ -241,51 +444,259 @@ public class SimpleWebServer {
                     Map<String, String> queryParams = parseQueryParams(t.getRequestURI().getQuery());
                     String type = queryParams.get("type");
                     String query = queryParams.get("query");
+                    // Keyset pagination: only one page is fetched and decrypted per request
+                    int limit = parseLimit(queryParams.get("limit"));
+                    String cursor = queryParams.get("cursor");
                     
                     // Auto-detect role from certificate
                     String role = getRoleFromCertificate(t);
                     boolean isDoctor = "doctor".equalsIgnoreCase(role);
+                    String keyRole = KeyRing.roleOf(isDoctor);
                     
                     System.out.println("Search Request - Role detected: " + role);
 
-                    List<PatientRecord> results = repository.search(query, type);
+                    SearchPage page;
+                    try {
+                        // Either the classic type+query pair, a term search over the encrypted text, or
+                        // structured filters (id, name, dob, doctor, nurse, checkInFrom, checkInTo)
+                        SearchCriteria criteria;
+                        if (TermIndex.SYMPTOMS.equals(type) || TermIndex.DIAGNOSIS.equals(type)) {
+                            // Blind-index lookup under the caller's role key; only matching records are decrypted
+                            criteria = new SearchCriteria().termTokens(
+                                    patientService.getTermIndex().queryTokens(keyRole, type, query));
+                        } else if (type != null) {
+                            criteria = SearchCriteria.of(query, type);
+                        } else {
+                            criteria = SearchCriteria.fromParams(queryParams);
+                        }
+                        // Media BLOBs are never read here; results link to /api/media instead
+                        page = repository.searchPage(criteria, limit, cursor, false);
+                    } catch (IllegalArgumentException e) {
+                        sendResponse(t, 400, e.getMessage());
+                        return;
+                    }
+
+                    // The handler owns the rows from here, so each one can be dropped once it is written
+                    List<PatientRecord> records = page.takeRecords();
+
+                    // Attachment metadata and image thumbnails for the whole page in one query
+                    List<Integer> indexes = new ArrayList<>();
+                    for (PatientRecord r : records) {
+                        indexes.add(r.getRecordIndex());
+                    }
+                    Map<Integer, List<MediaItem>> attachments = new HashMap<>();
+                    for (MediaItem item : repository.listMedia(indexes, true)) {
+                        attachments.computeIfAbsent(item.getRecordIndex(), k -> new ArrayList<>()).add(item);
+                    }
                     
-                    // Decrypt results for display
-                    List<Map<String, Object>> jsonResults = new ArrayList<>();
-                    for (PatientRecord r : results) {
+                    // Stream the page as it is decrypted: one record in memory at a time,
+                    // with chunked encoding since the length isn't known up front
+                    t.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    t.sendResponseHeaders(200, 0);
+                    // Not try-with-resources: closing the writer ends the chunked body, which would pass a
+                    // failure halfway through off as a complete (truncated) 200 response
+                    JsonWriter json = new JsonWriter(t.getResponseBody());
+                    json.beginObject().name("results").beginArray();
+                    for (int i = 0; i < records.size(); i++) {
+                        PatientRecord r = records.get(i);
+                        records.set(i, null); // let the ciphertext go once this row is written
+                        List<MediaItem> items = attachments.getOrDefault(r.getRecordIndex(), List.of());
+                        DecryptedRecord decrypted;
                         try {
-                            String[] decrypted = patientService.decryptMedicalData(r, isDoctor);
-                            Map<String, String> media = patientService.getDecryptedMedia(r, isDoctor);
-                            
-                            Map<String, Object> map = new HashMap<>();
-                            map.put("patientName", r.getPatientName());
-                            map.put("patientDob", r.getPatientDob().toString());
-                            map.put("checkInDate", r.getCheckInDate() != null ? r.getCheckInDate().toString() : "");
-                            map.put("doctorName", r.getDoctorName());
-                            map.put("nurseName", r.getNurseName());
-                            map.put("symptoms", decrypted[0]);
-                            map.put("diagnosis", decrypted[1]);
-                            map.put("recordIndex", r.getRecordIndex());
-                            
-                            if (media.containsKey("image")) map.put("image", media.get("image"));
-                            if (media.containsKey("video")) map.put("video", media.get("video"));
-                            
-                            jsonResults.add(map);
+                            // Text and thumbnails under one key unwrap per record
+                            decrypted = patientService.decryptRecord(r, keyRole, false, items);
                         } catch (Exception e) {
                             // Skip records we can't decrypt (wrong key/role)
                             System.out.println("Failed to decrypt record " + r.getRecordIndex());
+                            continue;
                         }
+                        writeRecord(json, r, decrypted, items);
                     }
-
-                    String json = toJson(jsonResults);
-                    t.getResponseHeaders().set("Content-Type", "application/json");
-                    sendResponse(t, 200, json);
+                    json.endArray().name("nextCursor").value(page.getNextCursor()).endObject();
+                    json.close();
                 } catch (Exception e) {
+                    if (t.getResponseCode() != -1) {
+                        // Headers are out: a status can't be sent any more. Throwing out of the handler makes the
+                        // server drop the connection without the final chunk, so the client sees an incomplete body
+                        System.out.println("Search response aborted: " + e.getMessage());
+                        throw e instanceof IOException ? (IOException) e : new IOException(e);
+                    }
                     e.printStackTrace();
                     sendResponse(t, 500, e.getMessage());
                 }
             }
         }
+
+        private static void writeRecord(JsonWriter json, PatientRecord r, DecryptedRecord decrypted, List<MediaItem> items)
+                throws IOException {
+            json.beginObject();
+            json.name("recordIndex").value(r.getRecordIndex());
+            json.name("patientName").value(r.getPatientName());
+            json.name("patientDob").value(r.getPatientDob().toString());
+            json.name("checkInDate").value(r.getCheckInDate() != null ? r.getCheckInDate().toString() : "");
+            json.name("doctorName").value(r.getDoctorName());
+            json.name("nurseName").value(r.getNurseName());
+            json.name("symptoms").value(decrypted.getSymptoms());
+            json.name("diagnosis").value(decrypted.getDiagnosis());
+            json.name("media").beginArray();
+            // Records stored before Patient_Media keep their single image/video in the record's own columns
+            if (r.getImageSize() != null) {
+                writeMedia(json, mediaUrl(r.getRecordIndex(), "image"), "image", "image/jpeg", r.getImageSize(), null);
+            }
+            if (r.getVideoSize() != null) {
+                writeMedia(json, mediaUrl(r.getRecordIndex(), "video"), "video", "video/mp4", r.getVideoSize(), null);
+            }
+            for (MediaItem item : items) {
+                writeMedia(json, mediaUrl(r.getRecordIndex(), Integer.toString(item.getMediaId())),
+                        item.getKind(), item.getContentType(), item.getSize(), decrypted.getThumbnail(item.getMediaId()));
+            }
+            json.endArray();
+            json.endObject();
+        }
+
+        // The thumbnail (base64 JPEG) is inlined: a few KB per image instead of a request per full-size picture
+        private static void writeMedia(JsonWriter json, String url, String kind, String contentType, long size,
+                                       byte[] thumbnail) throws IOException {
+            json.beginObject();
+            json.name("url").value(url);
+            json.name("kind").value(kind);
+            json.name("contentType").value(contentType);
+            json.name("size").value(size);
+            if (thumbnail != null) {
+                json.name("thumbnail").base64Value(thumbnail);
+            }
+            json.endObject();
+        }
+    }
+
+    private static String mediaUrl(int recordIndex, String item) {
+        return "/api/media/" + recordIndex + "/" + item;
+    }
+
+    // GET /api/media/{recordIndex}/{mediaId}: decrypts one attachment on the fly and streams it as binary;
+    // {image|video} in place of the id serves the legacy single-item columns of older records.
+    // Honours a single Range (206 / 416), so browsers can seek in videos; only the chunks covering the range
+    // are read from the database and decrypted.
+    static class MediaHandler implements HttpHandler {
+        private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+        @Override
+        public void handle(HttpExchange t) throws IOException {
+            boolean head = "HEAD".equals(t.getRequestMethod());
+            if (!head && !"GET".equals(t.getRequestMethod())) {
+                sendResponse(t, 405, "Method Not Allowed");
+                return;
+            }
+            try {
+                String[] parts = t.getRequestURI().getPath().substring("/api/media/".length()).split("/");
+                if (parts.length != 2 || !parts[0].matches("\\d{1,9}")
+                        || !(parts[1].matches("\\d{1,9}") || "image".equals(parts[1]) || "video".equals(parts[1]))) {
+                    sendResponse(t, 404, "Not Found");
+                    return;
+                }
+                int recordIndex = Integer.parseInt(parts[0]);
+                String kind = parts[1];
+                boolean legacy = !Character.isDigit(kind.charAt(0));
+
+                String role = getRoleFromCertificate(t);
+                if ("unknown".equals(role)) {
+                    sendResponse(t, 403, "Forbidden");
+                    return;
+                }
+                String keyRole = KeyRing.roleOf("doctor".equals(role));
+
+                PatientRecord record = repository.getById(recordIndex, false);
+                if (record == null) {
+                    sendResponse(t, 404, "Record not found");
+                    return;
+                }
+                if (!patientService.canDecrypt(record, keyRole)) {
+                    sendResponse(t, 403, "Forbidden");
+                    return;
+                }
+                Long size;
+                String contentType;
+                MediaItem item = null;
+                if (legacy) {
+                    size = "image".equals(kind) ? record.getImageSize() : record.getVideoSize();
+                    // The stored extension is not kept; media is restored as .jpg/.mp4 elsewhere too
+                    contentType = "image".equals(kind) ? "image/jpeg" : "video/mp4";
+                } else {
+                    item = repository.getMediaItem(recordIndex, Integer.parseInt(kind));
+                    size = item == null ? null : item.getSize();
+                    contentType = item == null ? null : item.getContentType();
+                }
+                if (size == null) {
+                    sendResponse(t, 404, "No media " + kind + " for this record");
+                    return;
+                }
+
+                Headers headers = t.getResponseHeaders();
+                headers.set("Accept-Ranges", "bytes");
+                long[] range = parseRange(t.getRequestHeaders().getFirst("Range"), size);
+                if (range != null && range.length == 0) {
+                    headers.set("Content-Range", "bytes */" + size);
+                    sendResponse(t, 416, "Range Not Satisfiable");
+                    return;
+                }
+
+                try (InputStream encrypted = legacy ? repository.openMediaStream(recordIndex, kind) : repository.openMediaItem(item)) {
+                    if (encrypted == null) {
+                        sendResponse(t, 404, "No media " + kind + " for this record");
+                        return;
+                    }
+                    long start = range == null ? 0 : range[0];
+                    long length = range == null ? size : range[1] - range[0] + 1;
+                    headers.set("Content-Type", contentType);
+                    headers.set("Cache-Control", "private, no-store");
+                    if (range != null) {
+                        headers.set("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+                    }
+                    if (head) {
+                        headers.set("Content-Length", Long.toString(length));
+                    }
+                    // A zero length would mean "chunked" to HttpServer; -1 is "no body"
+                    t.sendResponseHeaders(range == null ? 200 : 206, head || length == 0 ? -1 : length);
+                    if (!head && length > 0) {
+                        try (OutputStream os = t.getResponseBody()) {
+                            patientService.streamMedia(record, keyRole, encrypted, os, start, length, size);
+                        }
+                    }
+                }
+                t.close();
+            } catch (Exception e) {
+                if (t.getResponseCode() != -1) {
+                    // Headers are out (client went away or a chunk failed authentication): just drop the connection
+                    System.out.println("Media stream for " + t.getRequestURI().getPath() + " aborted: " + e.getMessage());
+                    t.close();
+                    return;
+                }
+                e.printStackTrace();
+                sendResponse(t, 500, "Error: " + e.getMessage());
+            }
+        }
+
+        // A single "bytes=a-b", "bytes=a-" or "bytes=-n" range as {first, last}; null to send the whole body
+        // (no header, several ranges, or syntax we ignore as RFC 9110 allows), an empty array when unsatisfiable
+        static long[] parseRange(String header, long size) {
+            if (header == null || header.indexOf(',') >= 0) return null;
+            Matcher m = RANGE.matcher(header.trim());
+            if (!m.matches() || (m.group(1).isEmpty() && m.group(2).isEmpty())) return null;
+            try {
+                if (m.group(1).isEmpty()) {
+                    long suffix = Long.parseLong(m.group(2));
+                    if (suffix == 0 || size == 0) return new long[0];
+                    return new long[]{Math.max(0, size - suffix), size - 1};
+                }
+                long first = Long.parseLong(m.group(1));
+                long last = m.group(2).isEmpty() ? size - 1 : Math.min(Long.parseLong(m.group(2)), size - 1);
+                if (first >= size) return new long[0];
+                if (last < first) return null;
+                return new long[]{first, last};
+            } catch (NumberFormatException e) {
+                return null; // absurdly long numbers
+            }
+        }
     }
 
     static class UpdateHandler implements HttpHandler {
@@ -294,10 +705,15 @@ public class SimpleWebServer {
             if ("POST".equals(t.getRequestMethod())) {
                 try {
                     Map<String, String> params = parseJsonBody(t.getRequestBody());
-                    
-                    PatientRecord record = new PatientRecord();
-                    record.setRecordIndex(Integer.parseInt(params.get("recordIndex")));
-                    
+                    String keyRole = KeyRing.roleOf("doctor".equalsIgnoreCase(getRoleFromCertificate(t)));
+
+                    // Start from the stored record so only the fields that really change are written back
+                    PatientRecord record = repository.getById(Integer.parseInt(params.get("recordIndex")), false);
+                    if (record == null) {
+                        sendResponse(t, 404, "Record not found");
+                        return;
+                    }
+
                     record.setPatientName(params.get("patientName"));
                     record.setPatientDob(Date.valueOf(params.get("patientDob")));
                     
@@ -307,22 +723,24 @@ public class SimpleWebServer {
                         try {
                             record.setCheckInDate(Timestamp.valueOf(checkInStr));
                         } catch (Exception e) {
-                            // Keep existing if parse fails? Or set to current? 
-                            // For update, maybe we should fetch existing if null, but here we are overwriting.
-                            // Let's default to current if invalid.
+                            // Unparseable: fall back to the current time
                             record.setCheckInDate(new Timestamp(System.currentTimeMillis()));
                         }
-                    } else {
-                         record.setCheckInDate(new Timestamp(System.currentTimeMillis()));
                     }
+                    // Missing check-in date keeps the stored one
 
                     record.setDoctorName(params.get("doctorName"));
                     record.setNurseName(params.get("nurseName"));
 
-                    patientService.processEncryption(record, params.get("symptoms"), params.get("diagnosis"));
-                    repository.update(record);
+                    boolean changed;
+                    MediaService.MediaResult media = patientService.applyMedicalChanges(record, keyRole, params.get("symptoms"), params.get("diagnosis"));
+                    try {
+                        changed = repository.updateChanged(record);
+                    } finally {
+                        media.close();
+                    }
                     
-                    sendResponse(t, 200, "Updated");
+                    sendResponse(t, 200, changed ? "Updated" : "No changes");
                 } catch (Exception e) {
                     e.printStackTrace();
                     sendResponse(t, 500, "Error: " + e.getMessage());
@@ -354,6 +772,15 @@ public class SimpleWebServer {
         return map;
     }
 
+    private static int parseLimit(String limit) {
+        if (limit == null || limit.isEmpty()) return DEFAULT_PAGE_SIZE;
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            return DEFAULT_PAGE_SIZE;
+        }
+    }
+
     private static Map<String, String> parseQueryParams(String query) {
         Map<String, String> map = new HashMap<>();
         if (query == null) return map;
@@ -366,25 +793,6 @@ public class SimpleWebServer {
         return map;
     }
 
-    private static String toJson(List<Map<String, Object>> list) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < list.size(); i++) {
-            sb.append("{");
-            Map<String, Object> map = list.get(i);
-            int j = 0;
-            for (Map.Entry<String, Object> entry : map.entrySet()) {
-                sb.append("\"").append(entry.getKey()).append("\":\"").append(entry.getValue()).append("\"");
-                if (j < map.size() - 1) sb.append(",");
-                j++;
-            }
-            sb.append("}");
-            if (i < list.size() - 1) sb.append(",");
-        }
-        sb.append("]");
-        return sb.toString();
-    }
-
     private static String getRoleFromCertificate(HttpExchange t) {
         try {
             if (t instanceof HttpsExchange) {
@@ -0,0 +1,128 @@
+package server;
+
+import util.Hashing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+// Keeps the web UI files in memory together with a precompressed gzip copy, an ETag and Last-Modified.
+// Each file is read on first access; afterwards its mtime/size is re-checked at most once per
+// checkIntervalMillis and the entry is reloaded when the file changed, so edits show up without a restart.
+public class StaticAssetCache {
+
+    private static final int MIN_GZIP_SIZE = 512; // below this the gzip header overhead isn't worth it
+
+    public static class Asset {
+        public final byte[] content;
+        public final byte[] gzipped; // null when compression doesn't pay off
+        public final String etag;
+        public final long lastModified; // millis, truncated to seconds as HTTP dates are
+        public final String contentType;
+        final long size;
+        volatile long checkedAt;
+
+        Asset(byte[] content, byte[] gzipped, String etag, long lastModified, String contentType, long size) {
+            this.content = content;
+            this.gzipped = gzipped;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.size = size;
+        }
+
+        // Strong ETags must differ between the plain and the gzip representation
+        public String gzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gz\"";
+        }
+    }
+
+    private final Path root;
+    private final long checkIntervalMillis;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public StaticAssetCache(Path root, long checkIntervalMillis) {
+        this.root = root.toAbsolutePath().normalize();
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    // path is the request path ("/index.html"); returns null when there is no such file under the root
+    public Asset get(String path) throws IOException {
+        Path file = root.resolve(path.startsWith("/") ? path.substring(1) : path).normalize();
+        if (!file.startsWith(root)) {
+            return null; // directory traversal
+        }
+
+        String key = file.toString();
+        Asset asset = assets.get(key);
+        long now = System.currentTimeMillis();
+        if (asset != null && now - asset.checkedAt < checkIntervalMillis) {
+            return asset;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            assets.remove(key);
+            return null;
+        }
+        if (!attrs.isRegularFile()) {
+            return null;
+        }
+
+        long modified = attrs.lastModifiedTime().toMillis() / 1000 * 1000;
+        if (asset != null && asset.lastModified == modified && asset.size == attrs.size()) {
+            asset.checkedAt = now;
+            return asset;
+        }
+
+        asset = load(file, modified, attrs.size());
+        asset.checkedAt = now;
+        assets.put(key, asset);
+        return asset;
+    }
+
+    private static Asset load(Path file, long modified, long size) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        String etag = "\"" + Hashing.sha256(content).substring(0, 32) + "\"";
+        String contentType = contentType(file.getFileName().toString());
+        byte[] gzipped = null;
+        if (content.length >= MIN_GZIP_SIZE && isCompressible(contentType)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 3);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(content);
+            }
+            if (buffer.size() < content.length) {
+                gzipped = buffer.toByteArray();
+            }
+        }
+        System.out.println("📦 Cached " + file.getFileName() + " (" + content.length + " bytes"
+                + (gzipped != null ? ", " + gzipped.length + " gzipped" : "") + ")");
+        return new Asset(content, gzipped, etag, modified, contentType, size);
+    }
+
+    private static String contentType(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".html") || lower.endsWith(".htm")) return "text/html; charset=utf-8";
+        if (lower.endsWith(".js")) return "text/javascript; charset=utf-8";
+        if (lower.endsWith(".css")) return "text/css; charset=utf-8";
+        if (lower.endsWith(".json")) return "application/json";
+        if (lower.endsWith(".svg")) return "image/svg+xml";
+        if (lower.endsWith(".png")) return "image/png";
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) return "image/jpeg";
+        if (lower.endsWith(".ico")) return "image/x-icon";
+        return "application/octet-stream";
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.equals("application/json") || contentType.equals("image/svg+xml");
+    }
+}
@@ -0,0 +1,35 @@
+package service;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+
+// Per-thread Cipher instances so the hot paths skip the provider lookup in Cipher.getInstance.
+// Callers must always init() the cipher before use; init() also resets any state left by a failed doFinal.
+public final class CipherPool {
+
+    static final String AES_GCM = "AES/GCM/NoPadding";
+    static final String RSA_OAEP = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+
+    private static final ThreadLocal<Cipher> AES = ThreadLocal.withInitial(() -> create(AES_GCM));
+    private static final ThreadLocal<Cipher> RSA = ThreadLocal.withInitial(() -> create(RSA_OAEP));
+
+    private CipherPool() {
+        // Prevent object creation (utility class)
+    }
+
+    public static Cipher aesGcm() {
+        return AES.get();
+    }
+
+    public static Cipher rsaOaep() {
+        return RSA.get();
+    }
+
+    private static Cipher create(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher not available: " + transformation, e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package service;
+
+import util.Hashing;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU cache of unwrapped AES data keys, keyed by (role, SHA-256 of the wrapped key).
+// Lets repeated reads of the same record skip the RSA-OAEP unwrap. Cached key bytes are zeroed when
+// an entry expires or is evicted; callers always receive their own SecretKeySpec copy.
+public class DataKeyCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public DataKeyCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > DataKeyCache.this.maxSize) {
+                    eldest.getValue().destroy();
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized SecretKey get(String role, byte[] wrappedKey) {
+        String cacheKey = cacheKey(role, wrappedKey);
+        Entry entry = entries.get(cacheKey);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(cacheKey);
+            entry.destroy();
+            evictions++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return new SecretKeySpec(entry.keyBytes, "AES");
+    }
+
+    public synchronized void put(String role, byte[] wrappedKey, SecretKey aesKey) {
+        Entry previous = entries.put(cacheKey(role, wrappedKey), new Entry(aesKey.getEncoded(), System.nanoTime() + ttlNanos));
+        if (previous != null) {
+            previous.destroy();
+        }
+    }
+
+    // Drops expired entries; safe to call from a periodic task
+    public synchronized void purgeExpired() {
+        long now = System.nanoTime();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.isExpired(now)) {
+                entry.destroy();
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.destroy();
+        }
+        entries.clear();
+    }
+
+    private static String cacheKey(String role, byte[] wrappedKey) {
+        return role + ":" + Hashing.sha256(wrappedKey);
+    }
+
+    // Metrics
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private static class Entry {
+        final byte[] keyBytes;
+        final long expiresAt;
+
+        Entry(byte[] keyBytes, long expiresAt) {
+            this.keyBytes = keyBytes;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        void destroy() {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+}
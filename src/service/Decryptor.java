@@ -4,6 +4,11 @@ import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.util.Arrays;
@@ -20,7 +25,7 @@ public class Decryptor {
 
     // 1. Decrypt the AES Key using RSA Private Key
     public SecretKey decryptAESKey(byte[] encryptedAesKey) throws Exception {
-        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher rsa = CipherPool.rsaOaep();
         rsa.init(Cipher.DECRYPT_MODE, rsaPrivateKey);
         byte[] aesKeyBytes = rsa.doFinal(encryptedAesKey);
         return new SecretKeySpec(aesKeyBytes, "AES");
@@ -34,14 +39,153 @@ public class Decryptor {
 
     // 3. Decrypt Data (Bytes) using AES Key
     public byte[] decryptBytes(byte[] encryptedDataWithIv, SecretKey aesKey) throws Exception {
-        // Extract IV
-        byte[] iv = Arrays.copyOfRange(encryptedDataWithIv, 0, GCM_IV_SIZE);
-        // Extract Encrypted Data
-        byte[] encryptedBytes = Arrays.copyOfRange(encryptedDataWithIv, GCM_IV_SIZE, encryptedDataWithIv.length);
-
-        // AES-GCM Decrypt
-        Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
-        aes.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, iv));
-        return aes.doFinal(encryptedBytes);
+        return decryptBytes(encryptedDataWithIv, 0, encryptedDataWithIv.length, aesKey);
+    }
+
+    // Decrypt [IV][ciphertext+tag] held at buf[off, off + len) without copying it out first
+    public byte[] decryptBytes(byte[] buf, int off, int len, SecretKey aesKey) throws Exception {
+        if (len < GCM_IV_SIZE) {
+            throw new IllegalArgumentException("Encrypted data shorter than IV");
+        }
+        Cipher aes = CipherPool.aesGcm();
+        aes.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, buf, off, GCM_IV_SIZE));
+        return aes.doFinal(buf, off + GCM_IV_SIZE, len - GCM_IV_SIZE);
+    }
+
+    // Decrypt [IV][ciphertext+tag] from the remaining bytes of 'in' straight into 'out' (heap or direct).
+    // 'out' needs plaintextLength(in.remaining()) bytes free; returns the number of bytes written.
+    public int decrypt(ByteBuffer in, ByteBuffer out, SecretKey aesKey) throws Exception {
+        if (in.remaining() < GCM_IV_SIZE) {
+            throw new IllegalArgumentException("Encrypted data shorter than IV");
+        }
+        GCMParameterSpec spec;
+        if (in.hasArray()) {
+            spec = new GCMParameterSpec(GCM_TAG_SIZE, in.array(), in.arrayOffset() + in.position(), GCM_IV_SIZE);
+            in.position(in.position() + GCM_IV_SIZE);
+        } else {
+            byte[] iv = new byte[GCM_IV_SIZE];
+            in.get(iv);
+            spec = new GCMParameterSpec(GCM_TAG_SIZE, iv);
+        }
+        Cipher aes = CipherPool.aesGcm();
+        aes.init(Cipher.DECRYPT_MODE, aesKey, spec);
+        return aes.doFinal(in, out);
+    }
+
+    public static int plaintextLength(int encryptedLength) {
+        return encryptedLength - GCM_IV_SIZE - GCM_TAG_SIZE / 8;
+    }
+
+    // 4. Decrypt a chunked stream written by Encryptor.encryptStream; memory use is three chunk buffers
+    // (current and look-ahead ciphertext, plus the plaintext)
+    public void decryptStream(InputStream in, OutputStream out, SecretKey aesKey) throws Exception {
+        decryptStreamRange(in, out, aesKey, 0, Long.MAX_VALUE);
+    }
+
+    // 5. Decrypt only plaintext bytes [offset, offset + length) of a chunked stream. The chunks before the range
+    // are skipped in the ciphertext without being read or decrypted, and every chunk is authenticated before any
+    // of it is written, so a seek into a large video costs about one chunk rather than everything before it.
+    public void decryptStreamRange(InputStream in, OutputStream out, SecretKey aesKey, long offset, long length) throws Exception {
+        byte[] header = StreamFormat.readHeader(in);
+        int chunkSize = StreamFormat.chunkSize(header);
+        int sealedSize = chunkSize + StreamFormat.TAG_BYTES;
+
+        long counter = offset / chunkSize;
+        int skip = (int) (offset % chunkSize);
+        in.skipNBytes(counter * sealedSize);
+
+        byte[] current = new byte[sealedSize];
+        byte[] next = new byte[sealedSize];
+        byte[] plain = new byte[sealedSize];
+        int n = in.readNBytes(current, 0, sealedSize);
+        long remaining = length;
+
+        while (remaining > 0) {
+            if (n < StreamFormat.TAG_BYTES) {
+                throw new IOException("Truncated media stream");
+            }
+            // A short chunk must be the last one; a full chunk is last only if nothing follows it
+            int nextLen = n < sealedSize ? 0 : in.readNBytes(next, 0, sealedSize);
+            boolean last = nextLen == 0;
+
+            Cipher aes = CipherPool.aesGcm();
+            aes.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, StreamFormat.nonce(header, counter, last)));
+            aes.updateAAD(header);
+            int plainLen = aes.doFinal(current, 0, n, plain, 0);
+            if (plainLen > skip) {
+                int count = (int) Math.min(plainLen - skip, remaining);
+                out.write(plain, skip, count);
+                remaining -= count;
+            }
+            skip = 0;
+
+            if (last) break;
+            byte[] tmp = current;
+            current = next;
+            next = tmp;
+            n = nextLen;
+            counter++;
+        }
+        out.flush();
+    }
+
+    // 6. Same, for a stream whose plaintext length is known (it is stored next to the media). With fixed-size
+    // segments that length is the segment index: it locates the segments covering the range and names the last
+    // one, so exactly those segments are read, with no look-ahead for the end. The length itself is only verified
+    // when the range includes the final segment (its last flag and size must then authenticate); a range that ends
+    // earlier decrypts correctly but cannot tell whether the stored length is right.
+    public void decryptStreamRange(InputStream in, OutputStream out, SecretKey aesKey, long offset, long length,
+                                   long plainLength) throws Exception {
+        byte[] header = StreamFormat.readHeader(in);
+        int chunkSize = StreamFormat.chunkSize(header);
+        int sealedSize = chunkSize + StreamFormat.TAG_BYTES;
+        long remaining = Math.min(length, plainLength - offset);
+        if (remaining <= 0) {
+            out.flush();
+            return;
+        }
+        long lastCounter = (plainLength - 1) / chunkSize;
+
+        long counter = offset / chunkSize;
+        int skip = (int) (offset % chunkSize);
+        in.skipNBytes(counter * sealedSize);
+
+        byte[] sealed = new byte[sealedSize];
+        byte[] plain = new byte[sealedSize];
+        while (remaining > 0) {
+            boolean last = counter == lastCounter;
+            int expected = (last ? (int) (plainLength - counter * chunkSize) : chunkSize) + StreamFormat.TAG_BYTES;
+            if (in.readNBytes(sealed, 0, expected) < expected) {
+                throw new IOException("Truncated media stream");
+            }
+
+            Cipher aes = CipherPool.aesGcm();
+            aes.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, StreamFormat.nonce(header, counter, last)));
+            aes.updateAAD(header);
+            int plainLen = aes.doFinal(sealed, 0, expected, plain, 0);
+            int count = (int) Math.min(plainLen - skip, remaining);
+            out.write(plain, skip, count);
+            remaining -= count;
+            skip = 0;
+            counter++;
+        }
+        out.flush();
+    }
+
+    // Plaintext length of a chunked stream held in memory, from its header and size
+    public static long streamPlaintextLength(byte[] encrypted) throws IOException {
+        int chunkSize = StreamFormat.chunkSize(Arrays.copyOf(encrypted, StreamFormat.HEADER_SIZE));
+        return StreamFormat.plaintextLength(encrypted.length, chunkSize);
+    }
+
+    // Decrypt a chunked stream held in memory into an exactly-sized array
+    public byte[] decryptStreamBytes(byte[] encrypted, SecretKey aesKey) throws Exception {
+        byte[] result = new byte[(int) streamPlaintextLength(encrypted)];
+        decryptStream(new ByteArrayInputStream(encrypted), new Encryptor.ArraySink(result), aesKey);
+        return result;
+    }
+
+    public static boolean isStreamFormat(byte[] encrypted) {
+        return encrypted != null && StreamFormat.isChunked(encrypted, 0, encrypted.length);
     }
 }
@@ -0,0 +1,40 @@
+package service;
+
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+// Default IvSource: one non-blocking DRBG per thread, reseeded from the system entropy source every RESEED_INTERVAL IVs.
+// Replaces SecureRandom.getInstanceStrong(), which blocks on /dev/random on Linux and was created fresh for every IV.
+public class DrbgIvSource implements IvSource {
+
+    private static final int RESEED_INTERVAL = 1 << 16;
+
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    @Override
+    public byte[] nextIv(int length) {
+        State s = state.get();
+        if (++s.count >= RESEED_INTERVAL) {
+            s.random.reseed();
+            s.count = 0;
+        }
+        byte[] iv = new byte[length];
+        s.random.nextBytes(iv);
+        return iv;
+    }
+
+    private static class State {
+        final SecureRandom random;
+        int count;
+
+        State() {
+            try {
+                random = SecureRandom.getInstance("DRBG",
+                        DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("DRBG not available", e);
+            }
+        }
+    }
+}
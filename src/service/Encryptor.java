@@ -3,7 +3,13 @@ package service;
 import javax.crypto.*;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.*;
 import java.security.spec.*;
 import java.util.Base64;
@@ -14,10 +20,19 @@ public class Encryptor {
     private static final int GCM_IV_SIZE = 12;
     private static final int GCM_TAG_SIZE = 128;
 
+    // Shared so every Encryptor draws from the same per-thread DRBGs
+    private static final IvSource DEFAULT_IV_SOURCE = new DrbgIvSource();
+
     private final PublicKey rsaPublicKey;
+    private final IvSource ivSource;
 
     public Encryptor(PublicKey rsaPublicKey) {
+        this(rsaPublicKey, DEFAULT_IV_SOURCE);
+    }
+
+    public Encryptor(PublicKey rsaPublicKey, IvSource ivSource) {
         this.rsaPublicKey = rsaPublicKey;
+        this.ivSource = ivSource;
     }
 
     // Generate a new AES Key
@@ -29,7 +44,7 @@ public class Encryptor {
 
     // Encrypt the AES Key using RSA
     public byte[] encryptAESKeyWithRSA(SecretKey aesKey) throws Exception {
-        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher rsa = CipherPool.rsaOaep();
         rsa.init(Cipher.ENCRYPT_MODE, rsaPublicKey);
         return rsa.doFinal(aesKey.getEncoded());
     }
@@ -37,40 +52,95 @@ public class Encryptor {
     // Encrypt data using an existing AES Key
     public byte[] encryptWithAES(String plainText, SecretKey aesKey) throws Exception {
         // Generate random IV
-        byte[] iv = new byte[GCM_IV_SIZE];
-        SecureRandom.getInstanceStrong().nextBytes(iv);
+        byte[] iv = ivSource.nextIv(GCM_IV_SIZE);
 
         // AES-GCM encrypt
-        Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher aes = CipherPool.aesGcm();
         aes.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, iv));
-        byte[] encryptedBytes = aes.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
+        byte[] plainBytes = plainText.getBytes(StandardCharsets.UTF_8);
 
-        // Combine IV + Encrypted Data (we need IV to decrypt!)
+        // Write IV + Encrypted Data into one array (we need IV to decrypt!)
         // Format: [IV (12 bytes)] [Encrypted Data]
-        byte[] result = new byte[GCM_IV_SIZE + encryptedBytes.length];
+        byte[] result = new byte[GCM_IV_SIZE + aes.getOutputSize(plainBytes.length)];
         System.arraycopy(iv, 0, result, 0, GCM_IV_SIZE);
-        System.arraycopy(encryptedBytes, 0, result, GCM_IV_SIZE, encryptedBytes.length);
+        aes.doFinal(plainBytes, 0, plainBytes.length, result, GCM_IV_SIZE);
         return result;
     }
 
     // Encrypt raw bytes (for images/videos)
     public byte[] encryptBytesWithAES(byte[] data, SecretKey aesKey) throws Exception {
         // Generate random IV
-        byte[] iv = new byte[GCM_IV_SIZE];
-        SecureRandom.getInstanceStrong().nextBytes(iv);
+        byte[] iv = ivSource.nextIv(GCM_IV_SIZE);
 
         // AES-GCM encrypt
-        Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher aes = CipherPool.aesGcm();
         aes.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, iv));
-        byte[] encryptedBytes = aes.doFinal(data);
-
-        // Combine IV + Encrypted Data
-        byte[] result = new byte[GCM_IV_SIZE + encryptedBytes.length];
+        // Write IV + Encrypted Data into one array
+        byte[] result = new byte[GCM_IV_SIZE + aes.getOutputSize(data.length)];
         System.arraycopy(iv, 0, result, 0, GCM_IV_SIZE);
-        System.arraycopy(encryptedBytes, 0, result, GCM_IV_SIZE, encryptedBytes.length);
+        aes.doFinal(data, 0, data.length, result, GCM_IV_SIZE);
         return result;
     }
 
+    // Encrypt a stream in fixed-size authenticated chunks (see StreamFormat); memory use is three chunk buffers
+    // (current and look-ahead plaintext, plus the sealed chunk)
+    public void encryptStream(InputStream in, OutputStream out, SecretKey aesKey) throws Exception {
+        int chunkSize = StreamFormat.DEFAULT_CHUNK_SIZE;
+        byte[] header = StreamFormat.header(chunkSize, ivSource.nextIv(StreamFormat.PREFIX_SIZE));
+        out.write(header);
+
+        byte[] current = new byte[chunkSize];
+        byte[] next = new byte[chunkSize];
+        byte[] sealed = new byte[chunkSize + StreamFormat.TAG_BYTES];
+        int n = in.readNBytes(current, 0, chunkSize);
+        long counter = 0;
+
+        while (true) {
+            // Look ahead one chunk so the final chunk can be flagged
+            int nextLen = n < chunkSize ? 0 : in.readNBytes(next, 0, chunkSize);
+            boolean last = nextLen == 0;
+
+            Cipher aes = CipherPool.aesGcm();
+            aes.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, StreamFormat.nonce(header, counter, last)));
+            aes.updateAAD(header);
+            int sealedLen = aes.doFinal(current, 0, n, sealed, 0);
+            out.write(sealed, 0, sealedLen);
+
+            if (last) break;
+            byte[] tmp = current;
+            current = next;
+            next = tmp;
+            n = nextLen;
+            counter++;
+        }
+        out.flush();
+    }
+
+    // Encrypt a file into an exactly-sized array without first reading the plaintext into memory
+    public byte[] encryptFileWithAES(Path file, SecretKey aesKey) throws Exception {
+        long length = StreamFormat.ciphertextLength(Files.size(file), StreamFormat.DEFAULT_CHUNK_SIZE);
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("File too large to hold in memory: " + file);
+        }
+        byte[] result = new byte[(int) length];
+        try (InputStream in = Files.newInputStream(file)) {
+            encryptStream(in, new ArraySink(result), aesKey);
+        }
+        return result;
+    }
+
+    // Encrypt a file into another file (e.g. a staging temp file) with constant memory
+    public void encryptFile(Path source, Path target, SecretKey aesKey) throws Exception {
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            encryptStream(in, out, aesKey);
+        }
+    }
+
+    public static long streamCiphertextLength(long plainLength) {
+        return StreamFormat.ciphertextLength(plainLength, StreamFormat.DEFAULT_CHUNK_SIZE);
+    }
+
     // Encrypt a single string (generates new key)
     public EncryptedData encrypt(String plainText) throws Exception {
         // 1️⃣ Generate AES key
@@ -79,16 +149,15 @@ public class Encryptor {
         SecretKey aesKey = keyGen.generateKey();
 
         // 2️⃣ Generate random IV
-        byte[] iv = new byte[GCM_IV_SIZE];
-        SecureRandom.getInstanceStrong().nextBytes(iv);
+        byte[] iv = ivSource.nextIv(GCM_IV_SIZE);
 
         // 3️⃣ AES-GCM encrypt
-        Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher aes = CipherPool.aesGcm();
         aes.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_SIZE, iv));
         byte[] encryptedData = aes.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
 
         // 4️⃣ Encrypt AES key with RSA
-        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher rsa = CipherPool.rsaOaep();
         rsa.init(Cipher.ENCRYPT_MODE, rsaPublicKey);
         byte[] encryptedAesKey = rsa.doFinal(aesKey.getEncoded());
 
@@ -96,6 +165,29 @@ public class Encryptor {
         return new EncryptedData(encryptedData, iv, encryptedAesKey);
     }
 
+    // Writes into a preallocated array, so no intermediate growable buffer is needed
+    static class ArraySink extends OutputStream {
+        private final byte[] target;
+        private int pos;
+
+        ArraySink(byte[] target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (pos >= target.length) throw new IOException("Output exceeds expected length");
+            target[pos++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > target.length - pos) throw new IOException("Output exceeds expected length");
+            System.arraycopy(b, off, target, pos, len);
+            pos += len;
+        }
+    }
+
     // ================= Helper class to hold encrypted data =================
     public static class EncryptedData {
         public final byte[] data;        // AES-encrypted data
@@ -0,0 +1,7 @@
+package service;
+
+// Supplies GCM nonces for Encryptor. Implementations must never hand out the same IV twice for one key.
+public interface IvSource {
+
+    byte[] nextIv(int length);
+}
@@ -0,0 +1,94 @@
+package service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Holds parsed RSA keys per role so the PEM parsing in KeyService only runs when a key file changes.
+public class KeyRing {
+
+    public static final String DOCTOR = "doctor";
+    public static final String NURSE = "nurse";
+
+    private final KeyService keyService;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    public KeyRing(KeyService keyService) {
+        this.keyService = keyService;
+    }
+
+    public PublicKey getPublicKey(String role) throws Exception {
+        return (PublicKey) get(publicKeyPath(role), false);
+    }
+
+    public PrivateKey getPrivateKey(String role) throws Exception {
+        return (PrivateKey) get(privateKeyPath(role), true);
+    }
+
+    public static String roleOf(boolean isDoctor) {
+        return isDoctor ? DOCTOR : NURSE;
+    }
+
+    private Object get(String pathStr, boolean isPrivate) throws Exception {
+        Path path = Paths.get(pathStr);
+        if (!Files.exists(path)) {
+            throw new Exception("Key not found at " + path.toAbsolutePath());
+        }
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        long modified = attrs.lastModifiedTime().toMillis();
+        long size = attrs.size();
+
+        Entry entry = entries.get(pathStr);
+        if (entry != null && entry.modified == modified && entry.size == size) {
+            hits.incrementAndGet();
+            return entry.key;
+        }
+
+        // File is new or has changed on disk: parse it again
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        Object key = isPrivate ? keyService.loadPrivateKey(pathStr) : keyService.loadPublicKey(pathStr);
+        loadNanos.addAndGet(System.nanoTime() - start);
+
+        entries.put(pathStr, new Entry(key, modified, size));
+        return key;
+    }
+
+    private static String publicKeyPath(String role) {
+        if (DOCTOR.equals(role)) return KeyService.DOCTOR_PUBLIC_KEY;
+        if (NURSE.equals(role)) return KeyService.NURSE_PUBLIC_KEY;
+        throw new IllegalArgumentException("Unknown role: " + role);
+    }
+
+    private static String privateKeyPath(String role) {
+        if (DOCTOR.equals(role)) return KeyService.DOCTOR_PRIVATE_KEY;
+        if (NURSE.equals(role)) return KeyService.NURSE_PRIVATE_KEY;
+        throw new IllegalArgumentException("Unknown role: " + role);
+    }
+
+    // Metrics
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getLoadTimeNanos() { return loadNanos.get(); }
+
+    private static class Entry {
+        final Object key;
+        final long modified;
+        final long size;
+
+        Entry(Object key, long modified, long size) {
+            this.key = key;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+}
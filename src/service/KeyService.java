@@ -6,8 +6,11 @@ import java.nio.file.Paths;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 public class KeyService {
 
@@ -15,6 +18,13 @@ public class KeyService {
     public static final String DOCTOR_PRIVATE_KEY = "keys/doctor/private.key";
     public static final String NURSE_PUBLIC_KEY = "keys/nurse/public.key";
     public static final String NURSE_PRIVATE_KEY = "keys/nurse/private.key";
+    // HMAC key for the blind search indexes (base64, 32 bytes); created by NameIndexBackfill
+    public static final String INDEX_KEY = "keys/index/hmac.key";
+
+    // Per-role HMAC key for the symptom/diagnosis term index; created by TermIndexBackfill
+    public static String termIndexKey(String role) {
+        return "keys/index/" + role + "-terms.key";
+    }
 
     public PublicKey loadPublicKey(String pathStr) throws Exception {
         Path path = Paths.get(pathStr);
@@ -51,4 +61,31 @@ public class KeyService {
         KeyFactory kf = KeyFactory.getInstance("RSA");
         return kf.generatePrivate(spec);
     }
+
+    public SecretKey loadIndexKey(String pathStr) throws Exception {
+        Path path = Paths.get(pathStr);
+        if (!Files.exists(path)) {
+            throw new Exception("Key not found at " + path.toAbsolutePath());
+        }
+
+        byte[] keyBytes = java.util.Base64.getDecoder().decode(Files.readString(path).replaceAll("\\s", ""));
+        if (keyBytes.length < 32) {
+            throw new Exception("Index key at " + path.toAbsolutePath() + " is shorter than 256 bits");
+        }
+        return new SecretKeySpec(keyBytes, "HmacSHA256");
+    }
+
+    // Writes a fresh random index key; refuses to overwrite, since every stored token depends on it
+    public void createIndexKey(String pathStr) throws Exception {
+        Path path = Paths.get(pathStr);
+        if (Files.exists(path)) {
+            throw new Exception("Index key already exists at " + path.toAbsolutePath());
+        }
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, java.util.Base64.getEncoder().encode(keyBytes));
+    }
 }
@@ -0,0 +1,86 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+// One media attachment handed in by the caller (an upload, a path typed at the console) for a single
+// record, instead of whatever happens to be lying in a shared folder. Kind and content type follow
+// the file name's extension; unsupported types are rejected up front.
+public class MediaInput {
+
+    private final String filename;
+    private final String kind;
+    private final String contentType;
+    private final Path file;
+    private InputStream stream; // one-shot
+
+    private MediaInput(String filename, Path file, InputStream stream) {
+        String[] type = typeOf(filename);
+        this.kind = type[0];
+        this.contentType = type[1];
+        this.filename = filename;
+        this.file = file;
+        this.stream = stream;
+    }
+
+    // Throws unless the name has a supported extension; lets callers refuse a file before storing it
+    public static void checkSupported(String filename) {
+        typeOf(filename);
+    }
+
+    // {kind, content type}
+    private static String[] typeOf(String filename) {
+        String lower = filename.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+            return new String[]{"image", "image/jpeg"};
+        } else if (lower.endsWith(".png")) {
+            return new String[]{"image", "image/png"};
+        } else if (lower.endsWith(".mp4")) {
+            return new String[]{"video", "video/mp4"};
+        } else if (lower.endsWith(".avi")) {
+            return new String[]{"video", "video/x-msvideo"};
+        }
+        throw new IllegalArgumentException("Unsupported media type: " + filename + " (jpg, png, mp4 or avi)");
+    }
+
+    public static MediaInput ofFile(Path file) {
+        return ofFile(file, file.getFileName().toString());
+    }
+
+    // filename decides the type, e.g. the client's name for an upload saved under a temp name
+    public static MediaInput ofFile(Path file, String filename) {
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("Not a file: " + file);
+        }
+        return new MediaInput(filename, file, null);
+    }
+
+    // The stream is read once, on whichever thread encrypts it, and closed afterwards
+    public static MediaInput ofStream(String filename, InputStream stream) {
+        return new MediaInput(filename, null, stream);
+    }
+
+    InputStream open() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        if (stream == null) {
+            throw new IOException("Media stream for " + filename + " was already consumed");
+        }
+        InputStream in = stream;
+        stream = null;
+        return in;
+    }
+
+    // Files can be read again (e.g. for a thumbnail); streams only once
+    boolean isRepeatable() {
+        return file != null;
+    }
+
+    public String getFilename() { return filename; }
+    public String getKind() { return kind; }
+    public String getContentType() { return contentType; }
+}
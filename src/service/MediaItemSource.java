@@ -0,0 +1,11 @@
+package service;
+
+import model.MediaItem;
+
+import java.io.InputStream;
+
+// Opens the encrypted bytes of one stored attachment, or returns null if it is gone
+@FunctionalInterface
+public interface MediaItemSource {
+    InputStream open(MediaItem item) throws Exception;
+}
@@ -1,89 +1,324 @@
 package service;
 
+import model.MediaItem;
+
 import javax.crypto.SecretKey;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MediaService {
 
-    public static class MediaResult {
-        public byte[] imageBytes = new byte[0];
-        public byte[] videoBytes = new byte[0];
-        public List<Path> processedFiles = new ArrayList<>();
+    // Media of one request is encrypted concurrently; the pool is shared and bounded so big uploads can't starve the server
+    private static final ExecutorService ENCRYPTION_POOL = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "media-encrypt-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Previews for search results: at most 320px on the longest side
+    private static final ThumbnailGenerator THUMBNAILS = new ThumbnailGenerator(320, 0.8f);
+
+    // Encrypted media is staged in temp files so it can be streamed into the database; close() removes them
+    public static class MediaResult implements AutoCloseable {
+        public final List<MediaItem> items = new ArrayList<>();
+
+        @Override
+        public void close() {
+            for (MediaItem item : items) {
+                deleteQuietly(item.getEncryptedFile());
+                item.setEncryptedFile(null);
+            }
+        }
     }
 
-    public MediaResult processMediaFiles(Encryptor encryptor, SecretKey aesKey) {
+    // Encrypts each input into its own staged file, in parallel, all under the record's data key.
+    // If any input fails, the files staged for the others are removed and the first failure is thrown.
+    public MediaResult encryptMedia(List<MediaInput> inputs, Encryptor encryptor, SecretKey aesKey) throws Exception {
         MediaResult result = new MediaResult();
-        
-        try (Stream<Path> paths = Files.walk(Paths.get("media"))) {
-            List<Path> mediaFiles = paths.filter(Files::isRegularFile).toList();
-
-            for (Path file : mediaFiles) {
-                String fileName = file.getFileName().toString().toLowerCase();
-                
-                if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") || fileName.endsWith(".png")) {
-                    System.out.println("📸 Found Image: " + fileName);
-                    byte[] rawImage = Files.readAllBytes(file);
-                    result.imageBytes = encryptor.encryptBytesWithAES(rawImage, aesKey);
-                    result.processedFiles.add(file);
-                } 
-                else if (fileName.endsWith(".mp4") || fileName.endsWith(".avi")) {
-                    System.out.println("🎥 Found Video: " + fileName);
-                    byte[] rawVideo = Files.readAllBytes(file);
-                    result.videoBytes = encryptor.encryptBytesWithAES(rawVideo, aesKey);
-                    result.processedFiles.add(file);
+        if (inputs.isEmpty()) {
+            return result;
+        }
+
+        List<Future<MediaItem>> pending = new ArrayList<>();
+        for (MediaInput input : inputs) {
+            Callable<MediaItem> task = () -> encryptToStaging(encryptor, input, aesKey);
+            if (inputs.size() == 1) {
+                pending.add(CompletableFuture.completedFuture(task.call()));
+            } else {
+                pending.add(ENCRYPTION_POOL.submit(task));
+            }
+        }
+
+        Exception failure = null;
+        for (Future<MediaItem> future : pending) {
+            try {
+                result.items.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
                 }
             }
-        } catch (Exception e) {
-            System.out.println("⚠️ Error reading media folder: " + e.getMessage());
+        }
+        if (failure != null) {
+            result.close();
+            throw failure;
         }
         return result;
     }
 
-    public void deleteProcessedFiles(List<Path> files) {
-        System.out.println("🗑️ Cleaning up media files...");
-        for (Path file : files) {
-            try {
-                Files.delete(file);
-                System.out.println("Deleted: " + file.getFileName());
-            } catch (IOException e) {
-                System.out.println("Failed to delete: " + file.getFileName());
-            }
+    private MediaItem encryptToStaging(Encryptor encryptor, MediaInput input, SecretKey aesKey) throws Exception {
+        Path staged = Files.createTempFile("media-", ".enc");
+        try (CountingInputStream in = new CountingInputStream(input.open());
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(staged))) {
+            encryptor.encryptStream(in, out, aesKey);
+            System.out.println(("video".equals(input.getKind()) ? "🎥 Encrypted video: " : "📸 Encrypted image: ") + input.getFilename());
+            MediaItem item = new MediaItem(input.getKind(), input.getContentType(), in.count, staged);
+            item.setEncryptedThumbnail(encryptThumbnail(encryptor, input, aesKey));
+            return item;
+        } catch (Exception e) {
+            deleteQuietly(staged);
+            throw e;
+        }
+    }
+
+    // A second pass over the source; a picture ImageIO can't decode is still stored, just without a preview
+    private byte[] encryptThumbnail(Encryptor encryptor, MediaInput input, SecretKey aesKey) throws Exception {
+        if (!"image".equals(input.getKind()) || !input.isRepeatable()) {
+            return null;
+        }
+        byte[] thumbnail;
+        try (InputStream in = input.open()) {
+            thumbnail = THUMBNAILS.generate(in);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("No thumbnail for " + input.getFilename() + ": " + e.getMessage());
+            return null;
+        }
+        return thumbnail == null ? null : encryptor.encryptBytesWithAES(thumbnail, aesKey);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.out.println("Failed to delete staged file: " + file);
         }
     }
 
     public void restoreMedia(int recordIndex, byte[] encryptedImage, byte[] encryptedVideo, Decryptor decryptor, SecretKey aesKey) throws Exception {
         if (encryptedImage != null && encryptedImage.length > 0) {
-            byte[] imageBytes = decryptor.decryptBytes(encryptedImage, aesKey);
             Path imagePath = Paths.get("media", "restored_image_" + recordIndex + ".jpg");
-            Files.write(imagePath, imageBytes);
+            writeDecrypted(encryptedImage, imagePath, decryptor, aesKey);
             System.out.println("📸 Image restored to: " + imagePath.toString());
         }
 
         if (encryptedVideo != null && encryptedVideo.length > 0) {
-            byte[] videoBytes = decryptor.decryptBytes(encryptedVideo, aesKey);
             Path videoPath = Paths.get("media", "restored_video_" + recordIndex + ".mp4");
-            Files.write(videoPath, videoBytes);
+            writeDecrypted(encryptedVideo, videoPath, decryptor, aesKey);
             System.out.println("🎥 Video restored to: " + videoPath.toString());
         }
     }
 
+    // Restores one media item ("image" or "video") read as a stream, e.g. straight from the database
+    public void restoreMedia(int recordIndex, String kind, InputStream encrypted, Decryptor decryptor, SecretKey aesKey) throws Exception {
+        Path target = "video".equals(kind)
+                ? Paths.get("media", "restored_video_" + recordIndex + ".mp4")
+                : Paths.get("media", "restored_image_" + recordIndex + ".jpg");
+        writeRestored(target, out -> decryptMediaStream(encrypted, out, decryptor, aesKey));
+        System.out.println(("video".equals(kind) ? "🎥 Video" : "📸 Image") + " restored to: " + target.toString());
+    }
+
+    // Restores one Patient_Media attachment to media/restored_<record>_<id>.<ext>
+    public void restoreMediaItem(MediaItem item, InputStream encrypted, Decryptor decryptor, SecretKey aesKey) throws Exception {
+        Path target = Paths.get("media", "restored_" + item.getRecordIndex() + "_" + item.getMediaId() + extensionOf(item.getContentType()));
+        writeRestored(target, out -> decryptMediaStream(encrypted, out, decryptor, aesKey));
+        System.out.println(("video".equals(item.getKind()) ? "🎥 Video" : "📸 Image") + " restored to: " + target.toString());
+    }
+
+    // Range variants: only plaintext bytes [offset, offset + length) are restored, to
+    // media/restored_<kind>_<record>_<first>-<last>.<ext>; for chunked media only the segments covering them are
+    // read and decrypted. size is the stored plaintext size (-1 if unknown).
+    public void restoreMedia(int recordIndex, String kind, InputStream encrypted, long size, long offset, long length,
+                             Decryptor decryptor, SecretKey aesKey) throws Exception {
+        String extension = "video".equals(kind) ? ".mp4" : ".jpg";
+        restoreRange("restored_" + kind + "_" + recordIndex, extension, encrypted, size, offset, length, decryptor, aesKey);
+    }
+
+    public void restoreMediaItem(MediaItem item, InputStream encrypted, long offset, long length,
+                                 Decryptor decryptor, SecretKey aesKey) throws Exception {
+        restoreRange("restored_" + item.getRecordIndex() + "_" + item.getMediaId(), extensionOf(item.getContentType()),
+                encrypted, item.getSize(), offset, length, decryptor, aesKey);
+    }
+
+    private void restoreRange(String name, String extension, InputStream encrypted, long size, long offset, long length,
+                              Decryptor decryptor, SecretKey aesKey) throws Exception {
+        long last = offset + Math.min(length, size < 0 ? length : size - offset) - 1;
+        Path target = Paths.get("media", name + "_" + offset + "-" + last + extension);
+        writeRestored(target, out -> decryptMediaRange(encrypted, out, offset, length, size, decryptor, aesKey));
+        System.out.println("🎞️ Bytes " + offset + "-" + last + " restored to: " + target.toString());
+    }
+
+    @FunctionalInterface
+    private interface PlaintextWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
+    // A failed decryption (e.g. a chunk that doesn't authenticate) must not leave partial plaintext behind
+    private static void writeRestored(Path target, PlaintextWriter writer) throws Exception {
+        Files.createDirectories(target.getParent());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            writer.write(out);
+        } catch (Exception e) {
+            deleteQuietly(target);
+            throw e;
+        }
+    }
+
+    private static String extensionOf(String contentType) {
+        switch (contentType) {
+            case "image/png": return ".png";
+            case "video/mp4": return ".mp4";
+            case "video/x-msvideo": return ".avi";
+            default: return contentType.startsWith("video/") ? ".mp4" : ".jpg";
+        }
+    }
+
+    // Chunked media is decrypted chunk by chunk; single-blob media has one tag over the whole payload, so it must be read whole.
+    // Streams are classified by their header alone (StreamFormat.isChunked), as there is no going back to retry another format.
+    public void decryptMediaStream(InputStream encrypted, OutputStream out, Decryptor decryptor, SecretKey aesKey) throws Exception {
+        BufferedInputStream in = new BufferedInputStream(encrypted, 64 * 1024);
+        in.mark(StreamFormat.HEADER_SIZE);
+        byte[] head = in.readNBytes(StreamFormat.HEADER_SIZE);
+        in.reset();
+        if (StreamFormat.isChunked(head, 0, head.length)) {
+            decryptor.decryptStream(in, out, aesKey);
+        } else {
+            byte[] whole = in.readAllBytes();
+            out.write(decryptor.decryptBytes(whole, 0, whole.length, aesKey));
+        }
+    }
+
+    // Writes plaintext bytes [offset, offset + length) of one media item. Chunked media is decrypted from the
+    // chunk holding offset onwards, and with the stored plaintext size (-1 if unknown) it stops at the last chunk
+    // covering the range; legacy single-blob media has one tag over everything, so it is decrypted whole and sliced.
+    public void decryptMediaRange(InputStream encrypted, OutputStream out, long offset, long length, long size,
+                                  Decryptor decryptor, SecretKey aesKey) throws Exception {
+        // PushbackInputStream rather than mark/reset, so skip() still reaches the source's cheap skip
+        PushbackInputStream in = new PushbackInputStream(encrypted, StreamFormat.HEADER_SIZE);
+        byte[] head = in.readNBytes(StreamFormat.HEADER_SIZE);
+        in.unread(head);
+        if (StreamFormat.isChunked(head, 0, head.length)) {
+            if (size >= 0) {
+                decryptor.decryptStreamRange(in, out, aesKey, offset, length, size);
+            } else {
+                decryptor.decryptStreamRange(in, out, aesKey, offset, length);
+            }
+        } else {
+            byte[] whole = in.readAllBytes();
+            byte[] plain = decryptor.decryptBytes(whole, 0, whole.length, aesKey);
+            int start = (int) Math.min(offset, plain.length);
+            out.write(plain, start, (int) Math.min(length, plain.length - start));
+            out.flush();
+        }
+    }
+
     public byte[] decryptImageToBytes(byte[] encryptedImage, Decryptor decryptor, SecretKey aesKey) throws Exception {
         if (encryptedImage != null && encryptedImage.length > 0) {
-            return decryptor.decryptBytes(encryptedImage, aesKey);
+            return decryptMedia(encryptedImage, decryptor, aesKey);
         }
         return null;
     }
 
     public byte[] decryptVideoToBytes(byte[] encryptedVideo, Decryptor decryptor, SecretKey aesKey) throws Exception {
         if (encryptedVideo != null && encryptedVideo.length > 0) {
-            return decryptor.decryptBytes(encryptedVideo, aesKey);
+            return decryptMedia(encryptedVideo, decryptor, aesKey);
         }
         return null;
     }
+
+    // Plaintext bytes [offset, offset + length) of a stored video, clamped to its end; a seek into a chunked
+    // video costs the segments it covers instead of the whole recording
+    public byte[] decryptVideoToBytes(byte[] encryptedVideo, Decryptor decryptor, SecretKey aesKey, long offset, long length) throws Exception {
+        if (encryptedVideo == null || encryptedVideo.length == 0) {
+            return null;
+        }
+        long size = Decryptor.isStreamFormat(encryptedVideo) ? Decryptor.streamPlaintextLength(encryptedVideo) : -1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        decryptMediaRange(new ByteArrayInputStream(encryptedVideo), out, offset, length, size, decryptor, aesKey);
+        return out.toByteArray();
+    }
+
+    // Media is stored either chunked (current) or as a single IV-prefixed GCM blob (records written before chunking).
+    // Held in memory, a blob that looks chunked but has the wrong layout (an IOException, e.g. truncated) can still
+    // be retried as legacy; an authentication failure is never retried, it means the chunked media was tampered with.
+    private byte[] decryptMedia(byte[] encrypted, Decryptor decryptor, SecretKey aesKey) throws Exception {
+        IOException layoutError = null;
+        if (Decryptor.isStreamFormat(encrypted)) {
+            try {
+                return decryptor.decryptStreamBytes(encrypted, aesKey);
+            } catch (IOException e) {
+                layoutError = e;
+            }
+        }
+        try {
+            return decryptor.decryptBytes(encrypted, 0, encrypted.length, aesKey);
+        } catch (Exception e) {
+            if (layoutError != null) e.addSuppressed(layoutError);
+            throw e;
+        }
+    }
+
+    // The blob is in memory already, so it is decrypted (and format-checked) there before anything is written
+    private void writeDecrypted(byte[] encrypted, Path target, Decryptor decryptor, SecretKey aesKey) throws Exception {
+        byte[] plain = decryptMedia(encrypted, decryptor, aesKey);
+        writeRestored(target, out -> out.write(plain));
+    }
 }
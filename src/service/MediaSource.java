@@ -0,0 +1,9 @@
+package service;
+
+import java.io.InputStream;
+
+// Opens the encrypted bytes of one media item ("image" or "video"), or returns null if there is none
+@FunctionalInterface
+public interface MediaSource {
+    InputStream open(String kind) throws Exception;
+}
@@ -1,48 +1,46 @@
 package service;
 
+import model.DecryptedRecord;
+import model.MediaItem;
 import model.PatientRecord;
 import javax.crypto.SecretKey;
-import java.security.PrivateKey;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.PublicKey;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class PatientService {
 
-    private final KeyService keyService;
+    private final KeyRing keyRing;
     private final MediaService mediaService;
+    private final DataKeyCache dataKeyCache; // optional, null disables caching
+    private final TermIndex termIndex;
 
     public PatientService() {
-        this.keyService = new KeyService();
-        this.mediaService = new MediaService();
+        this(null);
     }
 
-    public void encryptAndPrepareRecord(PatientRecord record, String symptoms, String diagnosis) throws Exception {
-        // Load Keys
-        PublicKey doctorKey = keyService.loadPublicKey(KeyService.DOCTOR_PUBLIC_KEY);
-        PublicKey nurseKey = keyService.loadPublicKey(KeyService.NURSE_PUBLIC_KEY);
-
-        Encryptor doctorEncryptor = new Encryptor(doctorKey);
-        Encryptor nurseEncryptor = new Encryptor(nurseKey);
-
-        // Generate AES Key & Encrypt Data
-        SecretKey aesKey = doctorEncryptor.generateAESKey();
-        record.setEncryptedSymptoms(doctorEncryptor.encryptWithAES(symptoms, aesKey));
-        record.setEncryptedDiagnosis(doctorEncryptor.encryptWithAES(diagnosis, aesKey));
-
-        // Process Media
-        MediaService.MediaResult mediaResult = mediaService.processMediaFiles(doctorEncryptor, aesKey);
-        record.setEncryptedImages(mediaResult.imageBytes);
-        record.setEncryptedVideos(mediaResult.videoBytes);
-        
-        record.setDoctorEncryptedAesKey(doctorEncryptor.encryptAESKeyWithRSA(aesKey));
-        record.setNurseEncryptedAesKey(nurseEncryptor.encryptAESKeyWithRSA(aesKey));
+    public PatientService(DataKeyCache dataKeyCache) {
+        KeyService keyService = new KeyService();
+        this.keyRing = new KeyRing(keyService);
+        this.mediaService = new MediaService();
+        this.dataKeyCache = dataKeyCache;
+        this.termIndex = new TermIndex(keyService);
     }
 
     public MediaService.MediaResult processEncryption(PatientRecord record, String symptoms, String diagnosis) throws Exception {
-        PublicKey doctorKey = keyService.loadPublicKey(KeyService.DOCTOR_PUBLIC_KEY);
-        PublicKey nurseKey = keyService.loadPublicKey(KeyService.NURSE_PUBLIC_KEY);
+        return processEncryption(record, symptoms, diagnosis, List.of());
+    }
+
+    // Encrypts the text and the given media under a fresh data key; the media is queued on the record for
+    // the repository to store. Close the returned MediaResult once the record has been written.
+    public MediaService.MediaResult processEncryption(PatientRecord record, String symptoms, String diagnosis,
+                                                      List<MediaInput> media) throws Exception {
+        PublicKey doctorKey = keyRing.getPublicKey(KeyRing.DOCTOR);
+        PublicKey nurseKey = keyRing.getPublicKey(KeyRing.NURSE);
 
         Encryptor doctorEncryptor = new Encryptor(doctorKey);
         Encryptor nurseEncryptor = new Encryptor(nurseKey);
@@ -50,10 +48,13 @@ public class PatientService {
         SecretKey aesKey = doctorEncryptor.generateAESKey();
         record.setEncryptedSymptoms(doctorEncryptor.encryptWithAES(symptoms, aesKey));
         record.setEncryptedDiagnosis(doctorEncryptor.encryptWithAES(diagnosis, aesKey));
+        indexTerms(record, symptoms, diagnosis);
 
-        MediaService.MediaResult mediaResult = mediaService.processMediaFiles(doctorEncryptor, aesKey);
-        record.setEncryptedImages(mediaResult.imageBytes);
-        record.setEncryptedVideos(mediaResult.videoBytes);
+        // Attachments live in Patient_Media; the single-item columns are only read for older records
+        record.setEncryptedImages(new byte[0]);
+        record.setEncryptedVideos(new byte[0]);
+        MediaService.MediaResult mediaResult = mediaService.encryptMedia(media, doctorEncryptor, aesKey);
+        record.getPendingMedia().addAll(mediaResult.items);
 
         record.setDoctorEncryptedAesKey(doctorEncryptor.encryptAESKeyWithRSA(aesKey));
         record.setNurseEncryptedAesKey(nurseEncryptor.encryptAESKeyWithRSA(aesKey));
@@ -61,76 +62,190 @@ public class PatientService {
         return mediaResult;
     }
 
-    public void decryptAndRestore(PatientRecord record, boolean isDoctor) throws Exception {
-        String keyPath = isDoctor ? KeyService.DOCTOR_PRIVATE_KEY : KeyService.NURSE_PRIVATE_KEY;
-        PrivateKey privateKey = keyService.loadPrivateKey(keyPath);
-
-        Decryptor decryptor = new Decryptor(privateKey);
-        byte[] encryptedAesKey = isDoctor ? record.getDoctorEncryptedAesKey() : record.getNurseEncryptedAesKey();
+    // Differential update of a stored record (loaded with its payload): re-encrypts only the text that changed,
+    // under the record's existing data key, and encrypts the given MediaInputs under that same key. Untouched
+    // ciphertext, media and both wrapped keys stay as they are, so the repository's updateChanged rewrites
+    // only what moved. null symptoms/diagnosis mean "keep"; media is added as further attachments.
+    // Close the returned MediaResult after saving.
+    public MediaService.MediaResult applyMedicalChanges(PatientRecord record, String role, String symptoms, String diagnosis) throws Exception {
+        return applyMedicalChanges(record, role, symptoms, diagnosis, List.of());
+    }
 
-        if (encryptedAesKey == null || encryptedAesKey.length == 0) {
-            throw new Exception("No encrypted key found for this user role.");
+    public MediaService.MediaResult applyMedicalChanges(PatientRecord record, String role, String symptoms, String diagnosis,
+                                                        List<MediaInput> media) throws Exception {
+        Decryptor decryptor = new Decryptor(keyRing.getPrivateKey(role));
+        SecretKey aesKey = unwrapDataKey(record, role, decryptor);
+        // Only the AES half of the Encryptor is used; the data key stays wrapped as before
+        Encryptor encryptor = new Encryptor(keyRing.getPublicKey(role));
+
+        String currentSymptoms = decryptor.decryptString(record.getEncryptedSymptoms(), aesKey);
+        String currentDiagnosis = decryptor.decryptString(record.getEncryptedDiagnosis(), aesKey);
+        boolean textChanged = false;
+        if (symptoms != null && !symptoms.equals(currentSymptoms)) {
+            record.setEncryptedSymptoms(encryptor.encryptWithAES(symptoms, aesKey));
+            currentSymptoms = symptoms;
+            textChanged = true;
+        }
+        if (diagnosis != null && !diagnosis.equals(currentDiagnosis)) {
+            record.setEncryptedDiagnosis(encryptor.encryptWithAES(diagnosis, aesKey));
+            currentDiagnosis = diagnosis;
+            textChanged = true;
+        }
+        if (textChanged) {
+            indexTerms(record, currentSymptoms, currentDiagnosis);
         }
 
-        SecretKey aesKey = decryptor.decryptAESKey(encryptedAesKey);
-        
-        // Decrypt strings (we return them, or print them? Service should return data)
-        // But the method signature is void. Let's change it to return a DecryptedRecord DTO?
-        // Or just return the strings.
-        // For now, let's just restore media here, and let the caller decrypt strings using a helper?
-        // No, the service should do the work.
-        
-        // We can't easily modify the "record" to be decrypted since it holds encrypted bytes.
-        // We will just restore media here.
-        mediaService.restoreMedia(record.getRecordIndex(), record.getEncryptedImages(), record.getEncryptedVideos(), decryptor, aesKey);
+        MediaService.MediaResult mediaResult = mediaService.encryptMedia(media, encryptor, aesKey);
+        record.getPendingMedia().addAll(mediaResult.items);
+        return mediaResult;
     }
 
-    public String[] decryptMedicalData(PatientRecord record, boolean isDoctor) throws Exception {
-        String keyPath = isDoctor ? KeyService.DOCTOR_PRIVATE_KEY : KeyService.NURSE_PRIVATE_KEY;
-        PrivateKey privateKey = keyService.loadPrivateKey(keyPath);
+    // Term tokens travel with the record and are stored by the repository next to it
+    private void indexTerms(PatientRecord record, String symptoms, String diagnosis) throws Exception {
+        record.setTermTokens(termIndex.isEnabled() ? termIndex.tokensFor(symptoms, diagnosis) : null);
+    }
 
-        Decryptor decryptor = new Decryptor(privateKey);
-        byte[] encryptedAesKey = isDoctor ? record.getDoctorEncryptedAesKey() : record.getNurseEncryptedAesKey();
+    public void decryptAndRestore(PatientRecord record, boolean isDoctor) throws Exception {
+        String role = KeyRing.roleOf(isDoctor);
+        Decryptor decryptor = new Decryptor(keyRing.getPrivateKey(role));
+        SecretKey aesKey = unwrapDataKey(record, role, decryptor);
+        mediaService.restoreMedia(record.getRecordIndex(), record.getEncryptedImages(), record.getEncryptedVideos(), decryptor, aesKey);
+    }
 
-        if (encryptedAesKey == null || encryptedAesKey.length == 0) {
-            throw new Exception("No encrypted key found for this user role.");
+    // Restores media streamed from storage; the key is unwrapped once for all media kinds
+    public void decryptAndRestore(PatientRecord record, boolean isDoctor, MediaSource source) throws Exception {
+        String role = KeyRing.roleOf(isDoctor);
+        Decryptor decryptor = new Decryptor(keyRing.getPrivateKey(role));
+        SecretKey aesKey = unwrapDataKey(record, role, decryptor);
+        for (String kind : new String[]{"image", "video"}) {
+            try (InputStream encrypted = source.open(kind)) {
+                if (encrypted != null) {
+                    mediaService.restoreMedia(record.getRecordIndex(), kind, encrypted, decryptor, aesKey);
+                }
+            }
         }
+    }
 
-        SecretKey aesKey = decryptor.decryptAESKey(encryptedAesKey);
-        String symptoms = decryptor.decryptString(record.getEncryptedSymptoms(), aesKey);
-        String diagnosis = decryptor.decryptString(record.getEncryptedDiagnosis(), aesKey);
-        
-        return new String[]{symptoms, diagnosis};
+    // Restores the record's attachments from storage; the key is unwrapped once for all of them
+    public void restoreMediaItems(PatientRecord record, boolean isDoctor, List<MediaItem> items, MediaItemSource source) throws Exception {
+        String role = KeyRing.roleOf(isDoctor);
+        Decryptor decryptor = new Decryptor(keyRing.getPrivateKey(role));
+        SecretKey aesKey = unwrapDataKey(record, role, decryptor);
+        for (MediaItem item : items) {
+            try (InputStream encrypted = source.open(item)) {
+                if (encrypted != null) {
+                    mediaService.restoreMediaItem(item, encrypted, decryptor, aesKey);
+                }
+            }
+        }
     }
 
-    public Map<String, String> getDecryptedMedia(PatientRecord record, boolean isDoctor) throws Exception {
-        String keyPath = isDoctor ? KeyService.DOCTOR_PRIVATE_KEY : KeyService.NURSE_PRIVATE_KEY;
-        PrivateKey privateKey = keyService.loadPrivateKey(keyPath);
+    // Whether the role holds a wrapped data key for this record (loaded with its payload)
+    public boolean canDecrypt(PatientRecord record, String role) {
+        return wrappedKeyFor(record, role) != null;
+    }
+
+    // Streams plaintext bytes [offset, offset + length) of one media item read from storage, e.g. an HTTP Range;
+    // size is its stored plaintext size, so only the segments covering the range are read
+    public void streamMedia(PatientRecord record, String role, InputStream encrypted, OutputStream out,
+                            long offset, long length, long size) throws Exception {
+        Decryptor decryptor = new Decryptor(keyRing.getPrivateKey(role));
+        SecretKey aesKey = unwrapDataKey(record, role, decryptor);
+        mediaService.decryptMediaRange(encrypted, out, offset, length, size, decryptor, aesKey);
+    }
 
-        Decryptor decryptor = new Decryptor(privateKey);
-        byte[] encryptedAesKey = isDoctor ? record.getDoctorEncryptedAesKey() : record.getNurseEncryptedAesKey();
+    public String[] decryptMedicalData(PatientRecord record, boolean isDoctor) throws Exception {
+        DecryptedRecord decrypted = decryptRecord(record, KeyRing.roleOf(isDoctor), false);
+        return new String[]{decrypted.getSymptoms(), decrypted.getDiagnosis()};
+    }
 
-        if (encryptedAesKey == null || encryptedAesKey.length == 0) {
+    public Map<String, String> getDecryptedMedia(PatientRecord record, boolean isDoctor) throws Exception {
+        String role = KeyRing.roleOf(isDoctor);
+        if (wrappedKeyFor(record, role) == null) {
             return new HashMap<>();
         }
 
-        SecretKey aesKey = decryptor.decryptAESKey(encryptedAesKey);
+        DecryptedRecord decrypted = decryptRecord(record, role, true);
         Map<String, String> media = new HashMap<>();
+        if (decrypted.getImage() != null) {
+            media.put("image", Base64.getEncoder().encodeToString(decrypted.getImage()));
+        }
+        if (decrypted.getVideo() != null) {
+            media.put("video", Base64.getEncoder().encodeToString(decrypted.getVideo()));
+        }
+        return media;
+    }
+
+    public DecryptedRecord decryptRecord(PatientRecord record, String role) throws Exception {
+        return decryptRecord(record, role, true);
+    }
+
+    // Unwraps the record's AES key once and uses it for every field; media is skipped unless includeMedia is set
+    public DecryptedRecord decryptRecord(PatientRecord record, String role, boolean includeMedia) throws Exception {
+        return decryptRecord(record, role, includeMedia, List.of());
+    }
+
+    // Same, also decrypting the thumbnails of the record's listed attachments under that one unwrapped key.
+    // A preview that fails to decrypt is left out rather than failing the record.
+    public DecryptedRecord decryptRecord(PatientRecord record, String role, boolean includeMedia,
+                                         List<MediaItem> items) throws Exception {
+        Decryptor decryptor = new Decryptor(keyRing.getPrivateKey(role));
+        SecretKey aesKey = unwrapDataKey(record, role, decryptor);
+
+        DecryptedRecord decrypted = new DecryptedRecord(record);
+        decrypted.setSymptoms(decryptor.decryptString(record.getEncryptedSymptoms(), aesKey));
+        decrypted.setDiagnosis(decryptor.decryptString(record.getEncryptedDiagnosis(), aesKey));
 
-        byte[] imgBytes = mediaService.decryptImageToBytes(record.getEncryptedImages(), decryptor, aesKey);
-        if (imgBytes != null) {
-            media.put("image", Base64.getEncoder().encodeToString(imgBytes));
+        if (includeMedia) {
+            decrypted.setImage(mediaService.decryptImageToBytes(record.getEncryptedImages(), decryptor, aesKey));
+            decrypted.setVideo(mediaService.decryptVideoToBytes(record.getEncryptedVideos(), decryptor, aesKey));
+        }
+        for (MediaItem item : items) {
+            if (item.getEncryptedThumbnail() == null) continue;
+            try {
+                decrypted.putThumbnail(item.getMediaId(), decryptor.decryptBytes(item.getEncryptedThumbnail(), aesKey));
+            } catch (Exception e) {
+                System.out.println("Failed to decrypt thumbnail of media " + item.getMediaId());
+            }
+        }
+        return decrypted;
+    }
+
+    private SecretKey unwrapDataKey(PatientRecord record, String role, Decryptor decryptor) throws Exception {
+        byte[] encryptedAesKey = wrappedKeyFor(record, role);
+        if (encryptedAesKey == null) {
+            throw new Exception("No encrypted key found for this user role.");
+        }
+        if (dataKeyCache == null) {
+            return decryptor.decryptAESKey(encryptedAesKey);
         }
 
-        byte[] vidBytes = mediaService.decryptVideoToBytes(record.getEncryptedVideos(), decryptor, aesKey);
-        if (vidBytes != null) {
-            media.put("video", Base64.getEncoder().encodeToString(vidBytes));
+        SecretKey aesKey = dataKeyCache.get(role, encryptedAesKey);
+        if (aesKey == null) {
+            aesKey = decryptor.decryptAESKey(encryptedAesKey);
+            dataKeyCache.put(role, encryptedAesKey, aesKey);
         }
+        return aesKey;
+    }
 
-        return media;
+    private static byte[] wrappedKeyFor(PatientRecord record, String role) {
+        byte[] key = KeyRing.DOCTOR.equals(role) ? record.getDoctorEncryptedAesKey() : record.getNurseEncryptedAesKey();
+        return (key == null || key.length == 0) ? null : key;
     }
-    
+
     public MediaService getMediaService() {
         return mediaService;
     }
+
+    public KeyRing getKeyRing() {
+        return keyRing;
+    }
+
+    public DataKeyCache getDataKeyCache() {
+        return dataKeyCache;
+    }
+
+    public TermIndex getTermIndex() {
+        return termIndex;
+    }
 }
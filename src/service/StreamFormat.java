@@ -0,0 +1,93 @@
+package service;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Chunked AES-GCM container used for media ("STREAM" construction).
+// Layout: [magic (4)] [chunk size (4)] [nonce prefix (7)] then chunks of [ciphertext (<= chunk size)] [tag (16)].
+// Chunk i is sealed with nonce = prefix || i (4 bytes, big-endian) || last flag (1 byte), and the header as AAD,
+// so chunks cannot be reordered, dropped, or truncated/extended at a chunk boundary without failing authentication.
+// Chunks have a fixed size, so the plaintext size stored with the media locates any chunk and the last one; a byte
+// range is served by decrypting just the chunks that cover it.
+final class StreamFormat {
+
+    static final byte[] MAGIC = {'H', 'M', 'S', 1};
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    static final int PREFIX_SIZE = 7;
+    static final int HEADER_SIZE = MAGIC.length + 4 + PREFIX_SIZE;
+    static final int TAG_BYTES = 16;
+    static final int GCM_TAG_SIZE = TAG_BYTES * 8;
+
+    private StreamFormat() {
+        // Prevent object creation (utility class)
+    }
+
+    static byte[] header(int chunkSize, byte[] prefix) {
+        return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putInt(chunkSize).put(prefix).array();
+    }
+
+    static boolean hasMagic(byte[] data, int off, int len) {
+        if (data == null || len < HEADER_SIZE) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[off + i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    // Magic plus a valid chunk size: how every reader tells chunked media from a legacy single blob. A legacy
+    // blob passes only if its random IV happens to form such a header (about 1 in 2^40).
+    static boolean isChunked(byte[] data, int off, int len) {
+        if (!hasMagic(data, off, len)) return false;
+        int chunkSize = ByteBuffer.wrap(data, off + MAGIC.length, 4).getInt();
+        return chunkSize > 0 && chunkSize <= MAX_CHUNK_SIZE;
+    }
+
+    // Reads and validates the header, returning it whole (it doubles as AAD)
+    static byte[] readHeader(InputStream in) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        new DataInputStream(in).readFully(header);
+        if (!hasMagic(header, 0, header.length)) {
+            throw new IOException("Not a chunked media stream");
+        }
+        chunkSize(header);
+        return header;
+    }
+
+    static int chunkSize(byte[] header) throws IOException {
+        int chunkSize = ByteBuffer.wrap(header, MAGIC.length, 4).getInt();
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    static byte[] nonce(byte[] header, long counter, boolean last) {
+        if (counter > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Stream too long for 32-bit chunk counter");
+        }
+        byte[] nonce = new byte[PREFIX_SIZE + 5];
+        System.arraycopy(header, MAGIC.length + 4, nonce, 0, PREFIX_SIZE);
+        nonce[7] = (byte) (counter >>> 24);
+        nonce[8] = (byte) (counter >>> 16);
+        nonce[9] = (byte) (counter >>> 8);
+        nonce[10] = (byte) counter;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    static long ciphertextLength(long plainLength, int chunkSize) {
+        // An empty input still produces one (empty, authenticated) final chunk
+        long chunks = Math.max(1, (plainLength + chunkSize - 1) / chunkSize);
+        return HEADER_SIZE + plainLength + chunks * TAG_BYTES;
+    }
+
+    static long plaintextLength(long cipherLength, int chunkSize) {
+        long body = cipherLength - HEADER_SIZE;
+        long sealed = chunkSize + TAG_BYTES;
+        long chunks = body / sealed + (body % sealed > 0 ? 1 : 0);
+        return body - chunks * TAG_BYTES;
+    }
+}
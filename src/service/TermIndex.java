@@ -0,0 +1,70 @@
+package service;
+
+import util.BlindIndex;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Role-scoped blind index over the symptom and diagnosis text. Every role has its own HMAC key
+// (KeyService.termIndexKey), so a record is indexed once per role and a query can only match the
+// tokens written under the caller's key. Lets a doctor find records by term without decrypting every row.
+public class TermIndex {
+
+    public static final String SYMPTOMS = "symptoms";
+    public static final String DIAGNOSIS = "diagnosis";
+
+    private static final String[] ROLES = {KeyRing.DOCTOR, KeyRing.NURSE};
+
+    private final KeyService keyService;
+    private final ConcurrentHashMap<String, BlindIndex> indexes = new ConcurrentHashMap<>();
+
+    public TermIndex(KeyService keyService) {
+        this.keyService = keyService;
+    }
+
+    // Indexing is on once every role has a key
+    public boolean isEnabled() {
+        for (String role : ROLES) {
+            if (!Files.exists(Path.of(KeyService.termIndexKey(role)))) return false;
+        }
+        return true;
+    }
+
+    // Tokens to store for a record: each role's tokens for both fields
+    public Set<String> tokensFor(String symptoms, String diagnosis) throws Exception {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String role : ROLES) {
+            BlindIndex index = forRole(role);
+            tokens.addAll(index.termTokens(SYMPTOMS, symptoms));
+            tokens.addAll(index.termTokens(DIAGNOSIS, diagnosis));
+        }
+        return tokens;
+    }
+
+    // Tokens to look up for a query; a record matches when it carries all of them
+    public Set<String> queryTokens(String role, String field, String query) throws Exception {
+        if (!SYMPTOMS.equals(field) && !DIAGNOSIS.equals(field)) {
+            throw new IllegalArgumentException("Unknown search field: " + field);
+        }
+        if (!isEnabled()) {
+            throw new IllegalArgumentException("Term search is not configured (run TermIndexBackfill)");
+        }
+        Set<String> tokens = forRole(role).termTokens(field, query);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Search terms must be at least " + BlindIndex.MIN_TERM + " characters");
+        }
+        return tokens;
+    }
+
+    private BlindIndex forRole(String role) throws Exception {
+        BlindIndex index = indexes.get(role);
+        if (index == null) {
+            index = new BlindIndex(keyService.loadIndexKey(KeyService.termIndexKey(role)));
+            indexes.putIfAbsent(role, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,91 @@
+package util;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Keyed blind index: terms are stored as truncated HMAC-SHA256 tokens, so the token tables support
+// indexed equality lookups but reveal nothing about the underlying text to anyone without the key.
+// Each token is bound to a domain (e.g. "name"), so the same key never yields comparable tokens across fields.
+public class BlindIndex {
+
+    public static final int NGRAM = 3;
+    public static final int MIN_TERM = 2;
+    private static final int TOKEN_BYTES = 16;
+
+    private final ThreadLocal<Mac> macs;
+
+    public BlindIndex(SecretKey key) {
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 not available", e);
+            }
+        });
+    }
+
+    // Hex token for one term; equal (domain, term) pairs always give equal tokens under the same key
+    public String token(String domain, String term) {
+        Mac mac = macs.get();
+        mac.update(domain.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        byte[] digest = mac.doFinal(term.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(TOKEN_BYTES * 2);
+        for (int i = 0; i < TOKEN_BYTES; i++) {
+            hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // Tokens for every trigram of the normalized text; empty when the text is shorter than a trigram
+    public Set<String> ngramTokens(String domain, String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String gram : ngrams(text)) {
+            tokens.add(token(domain, gram));
+        }
+        return tokens;
+    }
+
+    // Tokens for every distinct word of the normalized text (exact-term lookups, e.g. "bronchitis")
+    public Set<String> termTokens(String domain, String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String term : terms(text)) {
+            tokens.add(token(domain, term));
+        }
+        return tokens;
+    }
+
+    public static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() >= MIN_TERM) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    public static Set<String> ngrams(String text) {
+        String s = normalize(text);
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + NGRAM <= s.length(); i++) {
+            grams.add(s.substring(i, i + NGRAM));
+        }
+        return grams;
+    }
+
+    // Case-, accent- and whitespace-insensitive, in line with MySQL's default *_ai_ci collations
+    public static String normalize(String text) {
+        if (text == null) return "";
+        String s = Normalizer.normalize(text, Normalizer.Form.NFKD).replaceAll("\\p{M}", "");
+        return s.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+}
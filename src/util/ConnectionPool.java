@@ -0,0 +1,340 @@
+package util;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Small fixed-bound JDBC connection pool, so repository calls reuse an open TCP/TLS/auth session
+// instead of paying the full MySQL handshake in DriverManager.getConnection every time.
+// Borrowed connections are proxies: close() hands the physical connection back to the pool.
+public class ConnectionPool implements DataSource {
+
+    public static class Config {
+        public int minIdle = 2;
+        public int maxSize = 10;
+        public long acquireTimeoutMillis = 10_000;
+        public long maxLifetimeMillis = 30 * 60_000;
+        public long leakDetectionThresholdMillis = 60_000; // 0 disables
+        public int validationTimeoutSeconds = 2;
+        public long validationBypassMillis = 500; // connections used this recently skip the ping
+        public long housekeepingPeriodMillis = 30_000;
+    }
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final Config config;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+    private volatile boolean connectedOnce;
+
+    // Metrics
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong retired = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+
+    public ConnectionPool(String url, String username, String password, Config config) {
+        if (config.maxSize <= 0 || config.minIdle < 0 || config.minIdle > config.maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + config.minIdle + " max=" + config.maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleAtFixedRate(this::housekeep, config.housekeepingPeriodMillis,
+                config.housekeepingPeriodMillis, TimeUnit.MILLISECONDS);
+        if (config.leakDetectionThresholdMillis > 0) {
+            long period = Math.max(1000, config.leakDetectionThresholdMillis / 2);
+            housekeeper.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(config.acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTransientConnectionException("Timed out after " + config.acquireTimeoutMillis
+                    + "ms waiting for a connection (active=" + getActiveConnections()
+                    + ", idle=" + getIdleConnections() + ", max=" + config.maxSize + ")");
+        }
+
+        try {
+            PooledConnection pooled = takeIdleOrCreate();
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowStack = config.leakDetectionThresholdMillis > 0 ? new Exception("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            acquisitions.incrementAndGet();
+            return pooled.newProxy();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isExpired(pooled) || !isAlive(pooled)) {
+                retire(pooled);
+                continue;
+            }
+            return pooled;
+        }
+        return create();
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, username, password);
+        connectedOnce = true;
+        created.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isExpired(PooledConnection pooled) {
+        return System.currentTimeMillis() - pooled.createdAt >= config.maxLifetimeMillis;
+    }
+
+    private boolean isAlive(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsedAt < config.validationBypassMillis) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(config.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            if (closed || isExpired(pooled) || pooled.physical.isClosed()) {
+                retire(pooled);
+                return;
+            }
+            // Hand back a clean session: undo any transaction the caller left open
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled); // LIFO keeps the warmest connections in use
+        } catch (SQLException e) {
+            retire(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void retire(PooledConnection pooled) {
+        retired.incrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+            // Already broken; nothing else to release
+        }
+    }
+
+    private void housekeep() {
+        // Retire idle connections that outlived maxLifetime, then top the idle set back up to minIdle
+        for (PooledConnection pooled : idle) {
+            if (isExpired(pooled) && idle.remove(pooled)) {
+                retire(pooled);
+            }
+        }
+        if (!connectedOnce) return; // don't hammer the server with credentials that never worked
+        while (!closed && idle.size() < config.minIdle && getTotalConnections() < config.maxSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = create();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                System.out.println("Connection pool: failed to open idle connection: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : borrowed) {
+            if (!pooled.leakReported && now - pooled.borrowedAt > config.leakDetectionThresholdMillis) {
+                pooled.leakReported = true;
+                leaksDetected.incrementAndGet();
+                System.out.println("Connection pool: possible leak, connection held for " + (now - pooled.borrowedAt) + "ms");
+                if (pooled.borrowStack != null) {
+                    pooled.borrowStack.printStackTrace(System.out);
+                }
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            retire(pooled);
+        }
+        // Borrowed connections are retired as they are returned
+    }
+
+    // Metrics
+    public int getActiveConnections() { return borrowed.size(); }
+    public int getIdleConnections() { return idle.size(); }
+    public int getTotalConnections() { return borrowed.size() + idle.size(); }
+    public int getThreadsAwaitingConnection() { return permits.getQueueLength(); }
+    public long getAcquisitionCount() { return acquisitions.get(); }
+    public long getAcquisitionTimeouts() { return timeouts.get(); }
+    public long getTotalWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()); }
+    public long getMaxWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()); }
+    public long getCreatedCount() { return created.get(); }
+    public long getRetiredCount() { return retired.get(); }
+    public long getLeaksDetected() { return leaksDetected.get(); }
+
+    public double getAverageWaitMillis() {
+        long count = acquisitions.get() + timeouts.get();
+        return count == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / count;
+    }
+
+    // DataSource boilerplate
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pool credentials are fixed; use getConnection()");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() { return null; }
+
+    @Override
+    public void setLogWriter(PrintWriter out) { }
+
+    @Override
+    public void setLoginTimeout(int seconds) { }
+
+    @Override
+    public int getLoginTimeout() { return 0; }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) return iface.cast(this);
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private class PooledConnection {
+        final Connection physical;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastUsedAt = createdAt;
+        volatile long borrowedAt;
+        volatile Exception borrowStack;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection newProxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    // One handle per borrow, so a stale reference cannot touch the connection after close()
+    private class Handle implements InvocationHandler {
+        private PooledConnection pooled;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (pooled != null) {
+                        PooledConnection returning = pooled;
+                        pooled = null;
+                        release(returning);
+                    }
+                    return null;
+                case "isClosed":
+                    return pooled == null || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + (pooled == null ? "closed" : pooled.physical) + "]";
+                default:
+                    if (pooled == null) {
+                        throw new SQLException("Connection is closed");
+                    }
+                    try {
+                        return method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -1,26 +1,55 @@
 package util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Objects;
 
 public class DBConnection {
 
     private static final String URL =
-            "jdbc:mysql://localhost:3306/hospital?useSSL=true&serverTimezone=UTC";
+            "jdbc:mysql://localhost:3306/hospital?useSSL=true&serverTimezone=UTC&rewriteBatchedStatements=true&useServerPrepStmts=true&cachePrepStmts=true";
 
     private static String username;
     private static String password;
+    private static ConnectionPool pool;
+    private static int poolSize = new ConnectionPool.Config().maxSize;
 
-    public static void setCredentials(String user, String pass) {
+    public static synchronized void setCredentials(String user, String pass) {
+        if (pool != null && Objects.equals(user, username) && Objects.equals(pass, password)) {
+            return; // same login: keep everyone's warm connections
+        }
         username = user;
         password = pass;
+        // Connections opened with the previous credentials must not be handed out any more
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    // Sizes pools created from now on; the web server matches it to the requests it lets run at once,
+    // so every admitted request can get a connection without waiting on the pool
+    public static synchronized void setPoolSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid pool size: " + maxSize);
+        }
+        poolSize = maxSize;
     }
 
     public static Connection getConnection() throws SQLException {
+        return getDataSource().getConnection();
+    }
+
+    public static synchronized ConnectionPool getDataSource() throws SQLException {
         if (username == null || password == null) {
             throw new SQLException("Database credentials not set.");
         }
-        return DriverManager.getConnection(URL, username, password);
+        if (pool == null) {
+            ConnectionPool.Config config = new ConnectionPool.Config();
+            config.maxSize = poolSize;
+            config.minIdle = Math.min(config.minIdle, poolSize);
+            pool = new ConnectionPool(URL, username, password, config);
+        }
+        return pool;
     }
 }
@@ -2,6 +2,7 @@ package view;
 
 import model.PatientRecord;
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
@@ -70,6 +71,40 @@ public class ConsoleView {
         record.setNurseName(scanner.nextLine());
     }
 
+    // Update form: a blank answer keeps the current value, so unchanged fields are not rewritten
+    public void editRecordDetails(PatientRecord record) {
+        System.out.print("Patient Name [" + record.getPatientName() + "]: ");
+        String name = scanner.nextLine();
+        if (!name.isBlank()) record.setPatientName(name);
+
+        System.out.print("Patient DOB (yyyy-mm-dd) [" + record.getPatientDob() + "]: ");
+        String dob = scanner.nextLine();
+        if (!dob.isBlank()) {
+            try {
+                record.setPatientDob(Date.valueOf(dob.trim()));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid date format. Keeping the current date of birth.");
+            }
+        }
+
+        System.out.print("Doctor Name [" + record.getDoctorName() + "]: ");
+        String doctor = scanner.nextLine();
+        if (!doctor.isBlank()) record.setDoctorName(doctor);
+
+        System.out.print("Nurse Name [" + record.getNurseName() + "]: ");
+        String nurse = scanner.nextLine();
+        if (!nurse.isBlank()) record.setNurseName(nurse);
+    }
+
+    // Returns {symptoms, diagnosis}; null entries mean "keep the current text"
+    public String[] getMedicalDataChanges() {
+        System.out.print("Symptoms (blank to keep): ");
+        String symptoms = scanner.nextLine();
+        System.out.print("Diagnosis (blank to keep): ");
+        String diagnosis = scanner.nextLine();
+        return new String[]{symptoms.isBlank() ? null : symptoms, diagnosis.isBlank() ? null : diagnosis};
+    }
+
     public String[] getMedicalDataInput() {
         System.out.print("Symptoms: ");
         String symptoms = scanner.nextLine();
@@ -78,6 +113,16 @@ public class ConsoleView {
         return new String[]{symptoms, diagnosis};
     }
 
+    // Images (jpg, png) and videos (mp4, avi) to attach; empty when the line is left blank
+    public List<String> getMediaPaths() {
+        System.out.print("Media files to attach (comma-separated paths, blank for none): ");
+        List<String> paths = new ArrayList<>();
+        for (String path : scanner.nextLine().split(",")) {
+            if (!path.isBlank()) paths.add(path.trim());
+        }
+        return paths;
+    }
+
     public boolean isDoctor() {
         System.out.println("Who are you?");
         System.out.println("1. Doctor");
@@ -90,7 +135,9 @@ public class ConsoleView {
         System.out.println("Search by:");
         System.out.println("1. Patient ID");
         System.out.println("2. Patient Name");
-        System.out.println("3. Date of Birth (yyyy-mm-dd)");
+        System.out.println("3. Date of Birth (yyyy, yyyy-mm or yyyy-mm-dd)");
+        System.out.println("4. Doctor Name");
+        System.out.println("5. Nurse Name");
         System.out.print("Choose option: ");
         String option = scanner.nextLine();
 
@@ -109,13 +156,28 @@ public class ConsoleView {
             type = "dob";
             System.out.print("Enter DOB: ");
             query = scanner.nextLine();
+        } else if (option.equals("4")) {
+            type = "doctor";
+            System.out.print("Enter Doctor Name: ");
+            query = scanner.nextLine();
+        } else if (option.equals("5")) {
+            type = "nurse";
+            System.out.print("Enter Nurse Name: ");
+            query = scanner.nextLine();
         } else {
             return null;
         }
         return new String[]{query, type};
     }
 
+    // Returned by selectRecord when the user asks for the next page of results
+    public static final PatientRecord NEXT_PAGE = new PatientRecord();
+
     public PatientRecord selectRecord(List<PatientRecord> results) {
+        return selectRecord(results, false);
+    }
+
+    public PatientRecord selectRecord(List<PatientRecord> results, boolean hasMore) {
         if (results.isEmpty()) {
             System.out.println("No records found.");
             return null;
@@ -128,9 +190,14 @@ public class ConsoleView {
                     (i + 1), r.getPatientName(), r.getPatientDob(), r.getDoctorName(), r.getNurseName(), r.getCheckInDate());
         }
 
-        System.out.print("\nEnter the number of the record to select (1-" + results.size() + "): ");
+        System.out.print("\nEnter the number of the record to select (1-" + results.size() + ")"
+                + (hasMore ? " or 'n' for the next page" : "") + ": ");
+        String input = scanner.nextLine();
+        if (hasMore && input.trim().equalsIgnoreCase("n")) {
+            return NEXT_PAGE;
+        }
         try {
-            int selection = Integer.parseInt(scanner.nextLine());
+            int selection = Integer.parseInt(input);
             if (selection < 1 || selection > results.size()) {
                 System.out.println("Invalid selection.");
                 return null;